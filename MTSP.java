@@ -1,8 +1,9 @@
 import genetic.Population;
 import genetic.Routes;
+import genetic.TimeModel;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -12,12 +13,30 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Random;
-import java.util.Scanner;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.List;
 
+import genetic.Checkpoint;
+import genetic.Decomposition;
+import genetic.CheckpointWriter;
+import genetic.DistanceMatrix;
+import genetic.Evaluator;
+import genetic.ExperimentRunner;
+import genetic.FitnessCache;
 import genetic.GeneticAlgorithm;
+import genetic.Individual;
+import genetic.IslandCoordinator;
+import genetic.IslandModel;
+import genetic.InterRouteSearch;
+import genetic.IslandWorker;
+import genetic.LocalSearch;
+import genetic.RandomStreams;
+import genetic.Seeder;
+import genetic.Telemetry;
+import genetic.TerminationCriteria;
+import genetic.Xoshiro256;
+import model.OrderFile;
 import model.Product;
+import model.SpatialIndex;
 import model.TimeRange;
 import model.Vehicle;
 import model.Worker;
@@ -38,13 +57,138 @@ public class MTSP {
 
   public static int maxGenerations = 10000;
 
+  // Early termination, each one disabled with 0
+  public static int stagnationGenerations = 0;
+  public static long timeLimitMillis = 0;
+  public static double targetCost = 0;
+  // Relative gap to the lower bound of the cost
+  public static double lowerBoundGap = 0;
+
+  // Threads used to evaluate the population, 1 to evaluate serially
+  public static int parallelism = Runtime.getRuntime().availableProcessors();
+
+  // Chromosomes kept by the fitness cache, 0 to evaluate every individual
+  public static int fitnessCacheSize = 0;
+
+  // Fraction of each generation whose routes are improved with 2-opt and Or-opt, 0 to not improve them
+  public static double localSearchFraction = 0;
+  // Nearest neighbors tried when moving destinations between routes of the elite and of the final
+  // solution, 0 to not move them
+  public static int interRouteNeighbors = 0;
+  // Fraction of the initial population built with savings, sweep and nearest neighbor, 0 to build it at random
+  public static double seedingFraction = 0;
+
+  // Populations evolved at the same time on their own thread, 1 for a single population
+  public static int islands = 1;
+  public static int islandPopulationSize = 50;
+  public static int migrationInterval = 50;
+  public static IslandModel.Topology topology = IslandModel.Topology.RING;
+
+  // Destinations per spatial cluster solved on its own, 0 to solve the whole instance at once
+  public static int clusterSize = 0;
+
+  // Root seed of every generator of the run: initial population, selection, crossover, mutation, islands and clusters
+  public static long seed = RandomStreams.entropy();
+
+  // File where the run is saved every checkpointInterval generations, null to not save it
+  public static String checkpointFile = null;
+  public static int checkpointInterval = 500;
+  // Checkpoint to continue from, null to start a new run
+  public static String resumeFile = null;
+
+  // Islands run as separate processes, 0 to run every island in this process
+  public static int processes = 0;
+
+  // Instance read by this process and by every worker process
+  public static String instanceFile = "input-20.prn";
+
+  // CSV with phase times, throughput, allocations and costs of every generation, null to not record them
+  public static String telemetryFile = null;
+
+  // Independent runs of the experiment, 0 for a single run that prints its routes
+  public static int repetitions = 0;
+  // CSV written with the result of every repetition, and CSV of a previous experiment to compare with
+  public static String resultsFile = "resultados-genetico.csv";
+  public static String baselineFile = null;
+
   // Min and Max coordinates
   private static int minYCoordinate = 0;
   private static int maxYCoordinate = 50;
   private static int minXCoordinate = 0;
   private static int maxXCoordinate = 70;
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException, InterruptedException {
+
+    // Arguments: [--input file] [--generations n] [--stagnation n] [--time-limit ms] [--target-cost cost]
+    // [--gap gap] [--seed seed] [--checkpoint file] [--checkpoint-interval n] [--resume file] [--telemetry file]
+    // [--local-search fraction] [--inter-route k] [--seeding fraction] [--cluster-size n] [--fitness-cache n]
+    // [--islands n] [--island-population n] [--migration-interval n] [--topology ring|random] [--processes n | --worker host port island] [--repetitions n] [--results file] [--baseline file]
+    String coordinatorHost = null;
+    int coordinatorPort = 0;
+    int island = -1;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--input")) {
+        instanceFile = args[++i];
+      } else if (args[i].equals("--generations")) {
+        maxGenerations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--stagnation")) {
+        stagnationGenerations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--time-limit")) {
+        timeLimitMillis = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--target-cost")) {
+        targetCost = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--gap")) {
+        lowerBoundGap = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--checkpoint")) {
+        checkpointFile = args[++i];
+      } else if (args[i].equals("--checkpoint-interval")) {
+        checkpointInterval = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--resume")) {
+        resumeFile = args[++i];
+      } else if (args[i].equals("--local-search")) {
+        localSearchFraction = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--inter-route")) {
+        interRouteNeighbors = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--fitness-cache")) {
+        fitnessCacheSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--seeding")) {
+        seedingFraction = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--cluster-size")) {
+        clusterSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--telemetry")) {
+        telemetryFile = args[++i];
+      } else if (args[i].equals("--islands")) {
+        islands = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--island-population")) {
+        islandPopulationSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--migration-interval")) {
+        migrationInterval = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--topology")) {
+        topology = IslandModel.Topology.valueOf(args[++i].toUpperCase());
+      } else if (args[i].equals("--processes")) {
+        processes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--repetitions")) {
+        repetitions = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--results")) {
+        resultsFile = args[++i];
+      } else if (args[i].equals("--baseline")) {
+        baselineFile = args[++i];
+      } else if (args[i].equals("--worker")) {
+        coordinatorHost = args[++i];
+        coordinatorPort = Integer.parseInt(args[++i]);
+        island = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument: " + args[i]);
+      }
+    }
+    // Worker processes only evolve an island with the options forwarded by launchWorkers
+    if (processes > 0 && (islands > 1 || clusterSize > 0 || repetitions > 0 || checkpointFile != null
+        || resumeFile != null || telemetryFile != null)) {
+      throw new IllegalArgumentException(
+          "--processes can't be combined with --islands, --cluster-size, --repetitions, --checkpoint, --resume or --telemetry");
+    }
     
     DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
     /**
@@ -117,22 +261,12 @@ public class MTSP {
     
     // Read input products
     try {
-      File myObj = new File("input-20.prn");
-      Scanner myReader = new Scanner(myObj);
-      int pid=0;
-      while (myReader.hasNext()) {
-        int posX = myReader.nextInt();
-        int posY = myReader.nextInt();
-        int yyyy = myReader.nextInt();
-        int mm = myReader.nextInt();
-        int dd = myReader.nextInt();
-        int HH = myReader.nextInt();
-        int MM = myReader.nextInt();
-        products.add(new Product(pid, posX, posY, LocalDateTime.of(yyyy,mm,dd,HH,MM), true));
-        pid++;
+      OrderFile orders = OrderFile.load(Paths.get(instanceFile), parallelism);
+      for (OrderFile.MalformedLine line : orders.getMalformedLines()) {
+        System.err.println(instanceFile + ", " + line);
       }
-      myReader.close();
-    } catch (FileNotFoundException e) {
+      products.addAll(orders.toProducts());
+    } catch (IOException e) {
       System.out.println("An error occurred.");
       e.printStackTrace();
     }
@@ -159,6 +293,87 @@ public class MTSP {
 
     // System.out.println("Number of products to send: " + numSelectedProducts);
 
+    // Clusters are solved and polished on their own, nothing quadratic is built for the whole instance
+    boolean clustered = clusterSize > 0 && coordinatorHost == null && repetitions == 0;
+
+    // Distances between selected products and depot, calculated only once, or on every call for the final routes
+    DistanceMatrix distanceMatrix = clustered ? DistanceMatrix.computed(selectedProducts, depot)
+        : new DistanceMatrix(selectedProducts, depot);
+
+    // Deadlines, shift and break as minutes since the starting time
+    TimeModel timeModel = new TimeModel(selectedProducts, shift, breakRange, curTime);
+
+    // Evaluation kernel used by the GA, Routes is only built for the best solution
+    Evaluator evaluator = new Evaluator(vehicles, workers, distanceMatrix, timeModel, overtimeBike, overtimeCar, lateDeliveryPenalty);
+
+    // Moves between routes, only towards the nearest neighbors of each destination
+    InterRouteSearch interRouteSearch = interRouteNeighbors > 0 && !clustered
+        ? new InterRouteSearch(evaluator, SpatialIndex.of(selectedProducts), interRouteNeighbors) : null;
+
+    // Constructive heuristics for part of the initial population
+    Seeder seeder = seedingFraction > 0 && !clustered
+        ? new Seeder(evaluator, SpatialIndex.of(selectedProducts), depot, seedingFraction) : null;
+
+    // Worker process: evolve one island and leave the results to the coordinator
+    if (coordinatorHost != null) {
+      GeneticAlgorithm ga = new GeneticAlgorithm(islandPopulationSize, 0.001, 0.8, 1, 5);
+      // Same streams as the island would get in this process
+      ga.setRandom(new RandomStreams(seed).derive(island).stream(0));
+      if (fitnessCacheSize > 0) {
+        ga.setFitnessCache(new FitnessCache(fitnessCacheSize));
+      }
+      if (localSearchFraction > 0) {
+        ga.setLocalSearch(new LocalSearch(evaluator, localSearchFraction));
+      }
+      ga.setInterRouteSearch(interRouteSearch);
+      ga.setSeeder(seeder);
+      try (IslandWorker worker = new IslandWorker(coordinatorHost, coordinatorPort, island)) {
+        worker.setMigrationInterval(migrationInterval);
+        worker.run(ga, numSelectedProducts, vehicles, workers, evaluator, terminationCriteria(evaluator), 1);
+      }
+      return;
+    }
+
+    // Experiment: independent seeded runs at the same time, written as CSV and summarized
+    if (repetitions > 0) {
+      long chromosomeBytes = 4L * (numSelectedProducts + 2 * numVehicles);
+      ExperimentRunner runner = new ExperimentRunner(repetitions, seed,
+          chromosomeBytes * (4 * 200 + fitnessCacheSize) + 8L * numVehicles * 2 * 200);
+      List<ExperimentRunner.Result> results = runner.run(runSeed -> {
+        final long runStart = System.currentTimeMillis();
+        GeneticAlgorithm ga = new GeneticAlgorithm(200, 0.001, 0.8, 1, 5);
+        ga.setRandom(new Xoshiro256(runSeed));
+        ga.setParallelism(1);
+        if (fitnessCacheSize > 0) {
+          ga.setFitnessCache(new FitnessCache(fitnessCacheSize));
+        }
+        if (localSearchFraction > 0) {
+          ga.setLocalSearch(new LocalSearch(evaluator, localSearchFraction));
+        }
+        ga.setInterRouteSearch(interRouteSearch);
+        ga.setSeeder(seeder);
+        TerminationCriteria criteria = terminationCriteria(evaluator).start();
+
+        Population population = ga.initPopulation(selectedProducts.size(), vehicles.size(), vehicles, workers);
+        ga.evalPopulation(population, evaluator);
+        int generation = 1;
+        while (ga.isTerminationConditionMet(generation, population, criteria) == false) {
+          population = ga.crossoverPopulation(population, vehicles, workers);
+          population = ga.mutatePopulation(population, selectedProducts.size(), vehicles.size());
+          ga.evalPopulation(population, evaluator);
+          generation++;
+        }
+        Routes routes = new Routes(polish(population.getFittest(0), evaluator, interRouteSearch), selectedProducts, vehicles, workers, depot, distanceMatrix, timeModel, overtimeBike, overtimeCar, lateDeliveryPenalty);
+        return new ExperimentRunner.Result(routes.getCost(), System.currentTimeMillis() - runStart,
+            routes.getPenaltyCost(), routes.getOvertimeCost(), routes.getDistanceCost());
+      });
+      ExperimentRunner.write(Paths.get(resultsFile), results);
+      double baseline[][] = baselineFile != null ? ExperimentRunner.read(Paths.get(baselineFile)) : null;
+      System.out.println(repetitions + " repetitions, " + runner.getConcurrency() + " at a time, written to " + resultsFile);
+      ExperimentRunner.printSummary(System.out, results, baseline);
+      return;
+    }
+
     /**
      * Begins Genetic Algorithm
      * Repeat 40 times
@@ -168,48 +383,278 @@ public class MTSP {
     //System.out.println("costos,tiempos,penalidades,costos-horas-extra,costos-distancia");
     while(c < 1) {
       final long startTime = System.currentTimeMillis();
-      // Initial GA
-      GeneticAlgorithm ga = new GeneticAlgorithm(200, 0.001, 0.8, 1, 5);
+      GeneticAlgorithm ga = null;
+      Individual fittest;
+      String stopped = "Stopped after " + maxGenerations + " generations.";
 
-      // Initialize population
-      Population population = ga.initPopulation(numSelectedProducts, numVehicles, vehicles, workers);
-    
-      // Evaluate population
-      ga.evalPopulation(population, selectedProducts, vehicles, workers, depot, shift, breakRange, curTime, overtimeBike, overtimeCar, lateDeliveryPenalty);
+      if (processes > 0) {
+        // Each island in its own process, migrants go through this one
+        try (IslandCoordinator coordinator = new IslandCoordinator(0)) {
+          coordinator.setTopology(topology);
+          coordinator.setSeed(seed);
+          List<Process> workerProcesses = launchWorkers(processes, coordinator.getPort());
+          try {
+            fittest = coordinator.run(processes, workerProcesses);
+          } catch (IOException e) {
+            for (Process process : workerProcesses) {
+              process.destroy();
+            }
+            throw e;
+          }
+          stopped = "Worker processes stopped at their first criterion met.";
+          for (Process process : workerProcesses) {
+            if (process.waitFor() != 0) {
+              throw new IllegalStateException("Worker process exited with " + process.exitValue());
+            }
+          }
+        }
+      } else if (clustered) {
+        // Each spatial cluster with its share of the fleet solved by its own GA, then polished with its nearest cluster
+        Decomposition decomposition = new Decomposition(selectedProducts, vehicles, workers, clusterSize, seed);
+        decomposition.setConcurrency(parallelism);
+        fittest = decomposition.solve((clusterProducts, clusterVehicles, clusterWorkers, clusterSeed) -> {
+          DistanceMatrix clusterDistances = new DistanceMatrix(clusterProducts, depot);
+          TimeModel clusterTime = new TimeModel(clusterProducts, shift, breakRange, curTime);
+          Evaluator clusterEvaluator = new Evaluator(clusterVehicles, clusterWorkers, clusterDistances, clusterTime,
+              overtimeBike, overtimeCar, lateDeliveryPenalty);
+          return evolve(clusterProducts, clusterVehicles, clusterWorkers, depot, clusterEvaluator, clusterSeed).getChromosome();
+        });
+        if (interRouteNeighbors > 0 || localSearchFraction > 0) {
+          fittest = decomposition.polishBoundaries(fittest, (pairProducts, pairVehicles, pairWorkers, chromosome) -> {
+            DistanceMatrix pairDistances = new DistanceMatrix(pairProducts, depot);
+            TimeModel pairTime = new TimeModel(pairProducts, shift, breakRange, curTime);
+            Evaluator pairEvaluator = new Evaluator(pairVehicles, pairWorkers, pairDistances, pairTime,
+                overtimeBike, overtimeCar, lateDeliveryPenalty);
+            InterRouteSearch pairSearch = interRouteNeighbors > 0 && pairProducts.size() > 1
+                ? new InterRouteSearch(pairEvaluator, SpatialIndex.of(pairProducts), interRouteNeighbors) : null;
+            return polish(new Individual(chromosome), pairEvaluator, pairSearch).getChromosome();
+          });
+        }
+        stopped = "Solved " + decomposition.getNumClusters() + " clusters of about " + clusterSize + " destinations.";
+      } else if (islands > 1) {
+        // Evolve smaller populations on their own thread exchanging their best individuals
+        IslandModel islandModel = new IslandModel(islands, islandPopulationSize, 0.001, 0.8, 1, 5);
+        islandModel.setTopology(topology);
+        islandModel.setSeed(seed);
+        islandModel.setMigrationInterval(migrationInterval);
+        islandModel.setFitnessCacheSize(fitnessCacheSize);
+        // Each island stops at the first criterion it meets, searches and seeding are applied to every island
+        islandModel.setTerminationCriteria(terminationCriteria(evaluator));
+        islandModel.setImprovements(localSearchFraction > 0 ? new LocalSearch(evaluator, localSearchFraction) : null,
+            interRouteSearch, seeder);
+        fittest = islandModel.run(numSelectedProducts, vehicles, workers, evaluator, maxGenerations);
+        stopped = "Islands stopped: " + Arrays.toString(islandModel.getReasons()) + ".";
+      } else {
+        // Initial GA, or the one saved in the checkpoint
+        Checkpoint checkpoint = null;
+        long instance = Checkpoint.fingerprint(selectedProducts, vehicles, workers);
+        if (resumeFile != null) {
+          checkpoint = Checkpoint.read(Paths.get(resumeFile), instance, numSelectedProducts, numVehicles);
+          ga = checkpoint.createAlgorithm();
+        } else {
+          ga = new GeneticAlgorithm(200, 0.001, 0.8, 1, 5);
+          ga.setRandom(new Xoshiro256(seed));
+        }
+        ga.setParallelism(parallelism);
+        if (fitnessCacheSize > 0) {
+          ga.setFitnessCache(new FitnessCache(fitnessCacheSize));
+        }
+        if (localSearchFraction > 0) {
+          ga.setLocalSearch(new LocalSearch(evaluator, localSearchFraction));
+        }
+        ga.setInterRouteSearch(interRouteSearch);
+        ga.setSeeder(seeder);
+
+        // Stop at the first criterion met
+        TerminationCriteria criteria = terminationCriteria(evaluator).start();
+        if (checkpoint != null) {
+          // Stagnation and time limit continue from the saved run
+          checkpoint.restoreCriteria(criteria);
+        }
+
+        Telemetry telemetry = telemetryFile != null ? new Telemetry(Paths.get(telemetryFile)) : null;
+        ga.setTelemetry(telemetry);
 
-      // Keep track of current generation
-      int generation = 1;
+        Population population;
+        int generation;
+        if (checkpoint != null) {
+          // Saved population, already evaluated
+          population = checkpoint.createPopulation();
+          generation = checkpoint.getGeneration();
+        } else {
+          // Initialize population
+          population = ga.initPopulation(numSelectedProducts, numVehicles, vehicles, workers);
 
-      // Start evolution loop
-      while (ga.isTerminationConditionMet(generation, maxGenerations) == false) {
-        // Apply crossover
-        population = ga.crossoverPopulation(population, vehicles, workers);
+          // Evaluate population
+          ga.evalPopulation(population, evaluator);
 
-        // Apply mutation
-        population = ga.mutatePopulation(population, selectedProducts.size(), vehicles.size());
+          // Keep track of current generation
+          generation = 1;
+        }
 
-        // Evaluate population
-        ga.evalPopulation(population, selectedProducts, vehicles, workers, depot, shift, breakRange, curTime, overtimeBike, overtimeCar, lateDeliveryPenalty);
+        // Start evolution loop, checkpoints and telemetry are written in the background
+        try (CheckpointWriter checkpointWriter = checkpointFile != null
+            ? new CheckpointWriter(Paths.get(checkpointFile)) : null) {
+          while (ga.isTerminationConditionMet(generation, population, criteria) == false) {
+            // Apply crossover
+            population = ga.crossoverPopulation(population, vehicles, workers);
 
-        // Increment the current generation
-        generation++;
+            // Apply mutation
+            population = ga.mutatePopulation(population, selectedProducts.size(), vehicles.size());
+
+            // Evaluate population
+            ga.evalPopulation(population, evaluator);
+
+            // Increment the current generation
+            generation++;
+
+            if (checkpointWriter != null && generation % checkpointInterval == 0) {
+              checkpointWriter.save(Checkpoint.capture(ga, population, generation, criteria, instance));
+            }
+          }
+        } finally {
+          if (telemetry != null) {
+            telemetry.close();
+          }
+        }
+        fittest = population.getFittest(0);
+        stopped = "Stopped after " + (generation - 1) + " generations: " + criteria.getReason() + ".";
       }
-      Routes routes = new Routes(population.getFittest(0), selectedProducts, vehicles, workers, depot, shift, breakRange, curTime, overtimeBike, overtimeCar, lateDeliveryPenalty);
+      if (!clustered) {
+        fittest = polish(fittest, evaluator, interRouteSearch);
+      }
+      Routes routes = new Routes(fittest, selectedProducts, vehicles, workers, depot, distanceMatrix, timeModel, overtimeBike, overtimeCar, lateDeliveryPenalty);
       
 
       final long endTime = System.currentTimeMillis();
       
       //System.out.println(routes.getCost() + "," + (endTime - startTime) + "," + routes.getPenaltyCost()+ "," + routes.getOvertimeCost()+ "," + routes.getDistanceCost());
 
-      System.out.println("Stopped after " + maxGenerations + " generations.");
+      System.out.println(stopped);
       System.out.println("Best cost: " + routes.getCost());
       System.out.println("Penalty cost: " + routes.getPenaltyCost());
       System.out.println("Overtime cost: " + routes.getOvertimeCost());
       System.out.println("Distance cost: " + routes.getDistanceCost());
+      if (ga != null && ga.getFitnessCache() != null) {
+        FitnessCache cache = ga.getFitnessCache();
+        System.out.println("Fitness cache hits: " + cache.getHits() + " misses: " + cache.getMisses());
+      }
       System.out.println("Chromosome:");
-      System.out.println(population.getFittest(0));
+      System.out.println(fittest);
       routes.printRoutes();
       c++;
     }
    }
+
+  /**
+   * Evolve a GA of 200 individuals on a single thread, as configured, until a
+   * termination criterion other than the target cost is met
+   * 
+   * @param products The destinations, by deadline
+   * @param vehicles The fleet
+   * @param workers The workers
+   * @param depot The origin point of every route
+   * @param evaluator The evaluation kernel of this instance
+   * @param seed Seed of the GA
+   * @return individual The best individual found, polished
+   */
+  private static Individual evolve(ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+      Product depot, Evaluator evaluator, long seed) {
+    GeneticAlgorithm ga = new GeneticAlgorithm(200, 0.001, 0.8, 1, 5);
+    ga.setRandom(new Xoshiro256(seed));
+    ga.setParallelism(1);
+    if (fitnessCacheSize > 0) {
+      ga.setFitnessCache(new FitnessCache(fitnessCacheSize));
+    }
+    if (localSearchFraction > 0) {
+      ga.setLocalSearch(new LocalSearch(evaluator, localSearchFraction));
+    }
+    InterRouteSearch interRouteSearch = interRouteNeighbors > 0 && products.size() > 1
+        ? new InterRouteSearch(evaluator, SpatialIndex.of(products), interRouteNeighbors) : null;
+    ga.setInterRouteSearch(interRouteSearch);
+    if (seedingFraction > 0) {
+      ga.setSeeder(new Seeder(evaluator, SpatialIndex.of(products), depot, seedingFraction));
+    }
+    TerminationCriteria criteria = new TerminationCriteria(maxGenerations)
+        .setStagnationGenerations(stagnationGenerations)
+        .setTimeLimit(timeLimitMillis);
+    criteria.start();
+
+    Population population = ga.initPopulation(products.size(), vehicles.size(), vehicles, workers);
+    ga.evalPopulation(population, evaluator);
+    int generation = 1;
+    while (ga.isTerminationConditionMet(generation, population, criteria) == false) {
+      population = ga.crossoverPopulation(population, vehicles, workers);
+      population = ga.mutatePopulation(population, products.size(), vehicles.size());
+      ga.evalPopulation(population, evaluator);
+      generation++;
+    }
+    return polish(population.getFittest(0), evaluator, interRouteSearch);
+  }
+
+  /**
+   * Build the termination criteria of the whole instance, as configured
+   * 
+   * @param evaluator The evaluation kernel of the instance, for the lower bound
+   * @return criteria Not started yet
+   */
+  private static TerminationCriteria terminationCriteria(Evaluator evaluator) {
+    TerminationCriteria criteria = new TerminationCriteria(maxGenerations)
+        .setStagnationGenerations(stagnationGenerations)
+        .setTimeLimit(timeLimitMillis)
+        .setTargetCost(targetCost);
+    if (lowerBoundGap > 0) {
+      criteria.setLowerBoundGap(evaluator.getLowerBound(), lowerBoundGap);
+    }
+    return criteria;
+  }
+
+  /**
+   * Improve the best solution before its routes are built, moving destinations
+   * between routes and then reordering each route, as configured
+   * 
+   * @param fittest The best individual found
+   * @param evaluator The evaluation kernel of the problem
+   * @param interRouteSearch Search moving destinations between routes, null to not move them
+   * @return individual A copy of fittest, improved
+   */
+  private static Individual polish(Individual fittest, Evaluator evaluator, InterRouteSearch interRouteSearch) {
+    Individual polished = new Individual(fittest.getChromosome());
+    if (interRouteSearch != null) {
+      interRouteSearch.improve(polished);
+    }
+    if (localSearchFraction > 0) {
+      new LocalSearch(evaluator, 1).improve(polished);
+    }
+    return polished;
+  }
+
+  /**
+   * Start worker processes on this machine running this same class, with
+   * every option that changes how an island evolves
+   * 
+   * @param numWorkers Number of processes, each one evolves an island
+   * @param port Port of the coordinator on the loopback interface
+   * @return processes
+   * @throws IOException
+   */
+  private static List<Process> launchWorkers(int numWorkers, int port) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    String classPath = System.getProperty("java.class.path");
+    List<Process> workerProcesses = new ArrayList<>();
+    for (int i = 0; i < numWorkers; i++) {
+      ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, "MTSP", "--input", instanceFile,
+          "--generations", String.valueOf(maxGenerations), "--stagnation", String.valueOf(stagnationGenerations),
+          "--time-limit", String.valueOf(timeLimitMillis), "--target-cost", String.valueOf(targetCost),
+          "--gap", String.valueOf(lowerBoundGap), "--seed", String.valueOf(seed),
+          "--local-search", String.valueOf(localSearchFraction), "--inter-route", String.valueOf(interRouteNeighbors),
+          "--seeding", String.valueOf(seedingFraction), "--fitness-cache", String.valueOf(fitnessCacheSize),
+          "--island-population", String.valueOf(islandPopulationSize),
+          "--migration-interval", String.valueOf(migrationInterval),
+          "--worker", "localhost", String.valueOf(port), String.valueOf(i));
+      builder.inheritIO();
+      workerProcesses.add(builder.start());
+    }
+    return workerProcesses;
+  }
 }
@@ -0,0 +1,164 @@
+package benchmark;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import genetic.GeneticAlgorithm;
+import genetic.Individual;
+import genetic.Population;
+import genetic.Routes;
+
+/**
+ * Hot paths of the genetic algorithm for each input file and population size
+ *
+ * Every benchmark uses the same GA parameters as MTSP, serial and without
+ * fitness cache so only the measured operation runs.
+ *
+ * @author ms
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneticBenchmark {
+
+	@Param({ "input-20.prn", "input-100.prn", "input-500.prn" })
+	public String instanceFile;
+
+	@Param({ "50", "200", "1000" })
+	public int populationSize;
+
+	private Instance instance;
+	private GeneticAlgorithm ga;
+	// Evaluated population, only read by the benchmarks
+	Population population;
+	// Population modified by full generations
+	private Population evolving;
+	private int row = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws FileNotFoundException {
+		this.instance = new Instance(this.instanceFile);
+		this.ga = new GeneticAlgorithm(this.populationSize, 0.001, 0.8, 1, 5);
+
+		this.population = this.ga.initPopulation(this.instance.getNumDestinations(), this.instance.getNumVehicles(),
+				this.instance.vehicles, this.instance.workers);
+		this.ga.evalPopulation(this.population, this.instance.evaluator);
+
+		this.evolving = this.ga.initPopulation(this.instance.getNumDestinations(), this.instance.getNumVehicles(),
+				this.instance.vehicles, this.instance.workers);
+		this.ga.evalPopulation(this.evolving, this.instance.evaluator);
+	}
+
+	/**
+	 * Evaluate every route of one individual
+	 */
+	@Benchmark
+	public double calcFitness() {
+		int row = this.nextRow();
+		// Otherwise only changed routes would be evaluated
+		this.population.markAllRoutesDirty(row);
+		return this.ga.calcFitness(this.population.getRow(row), this.instance.evaluator);
+	}
+
+	/**
+	 * Build the routes of one individual, as done for the final report
+	 */
+	@Benchmark
+	public Routes routes() {
+		return new Routes(this.population.getRow(this.nextRow()), this.instance.selectedProducts,
+				this.instance.vehicles, this.instance.workers, this.instance.depot, this.instance.distanceMatrix,
+				this.instance.timeModel, Instance.OVERTIME_BIKE, Instance.OVERTIME_CAR,
+				Instance.LATE_DELIVERY_PENALTY);
+	}
+
+	@Benchmark
+	public Population crossoverPopulation() {
+		return this.ga.crossoverPopulation(this.population, this.instance.vehicles, this.instance.workers);
+	}
+
+	/**
+	 * Mutate every individual of an evaluated population, restored before each
+	 * invocation as mutation resets the fitness
+	 */
+	@Benchmark
+	public Population mutatePopulation(Mutation mutation) {
+		return this.ga.mutatePopulation(mutation.population, this.instance.getNumDestinations(),
+				this.instance.getNumVehicles());
+	}
+
+	/**
+	 * Rank the population after a fitness changed
+	 */
+	@Benchmark
+	public Individual getFittest() {
+		Individual first = this.population.getRow(0);
+		first.setFitness(first.getFitness());
+		return this.population.getFittest(0);
+	}
+
+	/**
+	 * Crossover, mutation and evaluation, one iteration of MTSP's loop
+	 */
+	@Benchmark
+	public Population generation() {
+		this.evolving = this.ga.crossoverPopulation(this.evolving, this.instance.vehicles, this.instance.workers);
+		this.evolving = this.ga.mutatePopulation(this.evolving, this.instance.getNumDestinations(),
+				this.instance.getNumVehicles());
+		this.ga.evalPopulation(this.evolving, this.instance.evaluator);
+		return this.evolving;
+	}
+
+	/**
+	 * Evaluated population and its snapshot, for the mutation benchmark only
+	 */
+	@State(Scope.Thread)
+	public static class Mutation {
+		private Population population;
+		private int genes[];
+		private double fitness[];
+
+		@Setup(Level.Trial)
+		public void setUp(GeneticBenchmark benchmark) {
+			Instance instance = benchmark.instance;
+			this.population = benchmark.ga.initPopulation(instance.getNumDestinations(), instance.getNumVehicles(),
+					instance.vehicles, instance.workers);
+			benchmark.ga.evalPopulation(this.population, instance.evaluator);
+			this.genes = new int[this.population.size() * this.population.getChromosomeLength()];
+			this.fitness = new double[this.population.size()];
+			this.population.copyState(this.genes, this.fitness);
+		}
+
+		/**
+		 * Back to the evaluated population, route costs included
+		 */
+		@Setup(Level.Invocation)
+		public void restore(GeneticBenchmark benchmark) {
+			this.population.restoreState(this.genes, this.fitness);
+			benchmark.ga.evalPopulation(this.population, benchmark.instance.evaluator);
+		}
+	}
+
+	private int nextRow() {
+		if (++this.row == this.populationSize) {
+			this.row = 0;
+		}
+		return this.row;
+	}
+}
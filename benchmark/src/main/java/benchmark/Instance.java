@@ -0,0 +1,100 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Scanner;
+
+import genetic.DistanceMatrix;
+import genetic.Evaluator;
+import genetic.TimeModel;
+import model.Product;
+import model.TimeRange;
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Same problem MTSP solves, read from one of the input files
+ *
+ * Input files are looked up in the directory given by the mtsp.instances
+ * system property, the repository root when running from the benchmark
+ * module.
+ *
+ * @author ms
+ *
+ */
+public class Instance {
+	public static final int OVERTIME_BIKE = 8;
+	public static final int OVERTIME_CAR = 12;
+	public static final int LATE_DELIVERY_PENALTY = 20;
+
+	public final Product depot = new Product(45, 30);
+	public final ArrayList<Vehicle> vehicles = new ArrayList<>();
+	public final ArrayList<Worker> workers = new ArrayList<>();
+	public final ArrayList<Product> selectedProducts = new ArrayList<>();
+	public final DistanceMatrix distanceMatrix;
+	public final TimeModel timeModel;
+	public final Evaluator evaluator;
+
+	/**
+	 * Load an input file with the vehicles, workers and times used by MTSP
+	 *
+	 * @param fileName
+	 *            Name of the input file, e.g. input-100.prn
+	 * @throws FileNotFoundException
+	 */
+	public Instance(String fileName) throws FileNotFoundException {
+		LocalDateTime curTime = LocalDateTime.of(2021, 05, 04, 8, 00);
+		TimeRange shift = new TimeRange(curTime, curTime.plusHours(8));
+		TimeRange breakRange = new TimeRange(curTime.plusHours(4), curTime.plusHours(6));
+
+		for (int i = 0; i < 40; i++) {
+			this.vehicles.add(new Vehicle(4, 60, 3, 0));
+		}
+		for (int i = 0; i < 20; i++) {
+			this.vehicles.add(new Vehicle(25, 30, 5, 1));
+		}
+		for (int i = 0; i < 60; i++) {
+			this.workers.add(new Worker(i, false));
+		}
+
+		ArrayList<Product> products = new ArrayList<>();
+		File file = new File(System.getProperty("mtsp.instances", ".."), fileName);
+		try (Scanner reader = new Scanner(file)) {
+			int pid = 0;
+			while (reader.hasNext()) {
+				int posX = reader.nextInt();
+				int posY = reader.nextInt();
+				LocalDateTime deadline = LocalDateTime.of(reader.nextInt(), reader.nextInt(), reader.nextInt(),
+						reader.nextInt(), reader.nextInt());
+				products.add(new Product(pid, posX, posY, deadline, true));
+				pid++;
+			}
+		}
+
+		// Products with the earliest deadlines up to the total capacity
+		Collections.sort(products);
+		int totalCapacity = 0;
+		for (Vehicle vehicle : this.vehicles) {
+			totalCapacity += vehicle.getCapacity();
+		}
+		for (int i = 0; i < totalCapacity && i < products.size(); i++) {
+			this.selectedProducts.add(products.get(i));
+		}
+
+		this.distanceMatrix = new DistanceMatrix(this.selectedProducts, this.depot);
+		this.timeModel = new TimeModel(this.selectedProducts, shift, breakRange, curTime);
+		this.evaluator = new Evaluator(this.vehicles, this.workers, this.distanceMatrix, this.timeModel,
+				OVERTIME_BIKE, OVERTIME_CAR, LATE_DELIVERY_PENALTY);
+	}
+
+	public int getNumDestinations() {
+		return this.selectedProducts.size();
+	}
+
+	public int getNumVehicles() {
+		return this.vehicles.size();
+	}
+}
@@ -0,0 +1,139 @@
+package genetic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Property test of OrderedCrossover against the ordered crossover it replaced,
+ * which scanned the offspring with containsDestination and containsWorker
+ *
+ * Random parents and cut points, including empty and full substrings, must
+ * give the same whole chromosome: both destinations and workers crossed, and
+ * the vehicle counts in between left for the single point crossover.
+ *
+ * @author ms
+ *
+ */
+public class OrderedCrossoverTest {
+	private static final int CASES = 20000;
+
+	@Test
+	public void sameOffspringAsScanningCrossover() {
+		Random random = new Random(42);
+		OrderedCrossover crossover = new OrderedCrossover();
+		for (int c = 0; c < CASES; c++) {
+			int n = 1 + random.nextInt(c % 10 == 0 ? 200 : 20);
+			int m = 1 + random.nextInt(c % 10 == 0 ? 60 : 8);
+			// Workers are any m of a larger staff, the same ones in both parents
+			int staff[] = permutation(m + random.nextInt(m + 1), random);
+			Individual parent1 = parent(n, m, Arrays.copyOf(staff, m), random);
+			Individual parent2 = parent(n, m, Arrays.copyOf(staff, m), random);
+
+			int a = random.nextInt(n + 1), b = random.nextInt(n + 1);
+			int start = Math.min(a, b), end = Math.max(a, b);
+			a = n + m + random.nextInt(m + 1);
+			b = n + m + random.nextInt(m + 1);
+			int start2 = Math.min(a, b), end2 = Math.max(a, b);
+
+			Individual expected = blank(n, m);
+			scanDestinations(parent1, parent2, expected, n, start, end);
+			scanWorkers(parent1, parent2, expected, n, m, start2, end2);
+
+			Individual actual = blank(n, m);
+			crossover.crossDestinations(parent1, parent2, actual, n, start, end);
+			crossover.crossWorkers(parent1, parent2, actual, n, m, start2, end2);
+
+			assertArrayEquals(expected.getChromosome(), actual.getChromosome(),
+					"n " + n + " m " + m + " cuts " + start + "-" + end + ", " + start2 + "-" + end2);
+		}
+	}
+
+	/**
+	 * Ordered crossover of the destinations as it was, O(n^2)
+	 */
+	private static void scanDestinations(Individual parent1, Individual parent2, Individual offspring, int n,
+			int start, int end) {
+		for (int i = start; i < end; i++) {
+			offspring.setGene(i, parent1.getGene(i));
+		}
+		for (int i = 0; i < n; i++) {
+			int parent2Gene = i + end;
+			if (parent2Gene >= n) {
+				parent2Gene -= n;
+			}
+			if (offspring.containsDestination(parent2.getGene(parent2Gene), n) == false) {
+				for (int ii = 0; ii < n; ii++) {
+					if (offspring.getGene(ii) == -1) {
+						offspring.setGene(ii, parent2.getGene(parent2Gene));
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ordered crossover of the workers as it was, O(m^2)
+	 */
+	private static void scanWorkers(Individual parent1, Individual parent2, Individual offspring, int n, int m,
+			int start, int end) {
+		for (int i = start; i < end; i++) {
+			offspring.setGene(i, parent1.getGene(i));
+		}
+		for (int i = n + m; i < n + m + m; i++) {
+			if (offspring.containsWorker(parent2.getGene(i), n, m) == false) {
+				for (int ii = n + m; ii < n + m + m; ii++) {
+					if (offspring.getGene(ii) == -1) {
+						offspring.setGene(ii, parent2.getGene(i));
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Destinations and workers shuffled, random vehicle counts
+	 */
+	private static Individual parent(int n, int m, int workers[], Random random) {
+		int chromosome[] = new int[n + m + m];
+		System.arraycopy(permutation(n, random), 0, chromosome, 0, n);
+		for (int i = n; i < n + m; i++) {
+			chromosome[i] = random.nextInt(n + 1);
+		}
+		shuffle(workers, random);
+		System.arraycopy(workers, 0, chromosome, n + m, m);
+		return new Individual(chromosome);
+	}
+
+	/**
+	 * Offspring before crossover, the vehicle counts must stay as they are
+	 */
+	private static Individual blank(int n, int m) {
+		int chromosome[] = new int[n + m + m];
+		Arrays.fill(chromosome, -1);
+		return new Individual(chromosome);
+	}
+
+	private static int[] permutation(int size, Random random) {
+		int genes[] = new int[size];
+		for (int i = 0; i < size; i++) {
+			genes[i] = i;
+		}
+		shuffle(genes, random);
+		return genes;
+	}
+
+	private static void shuffle(int genes[], Random random) {
+		for (int i = genes.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int gene = genes[i];
+			genes[i] = genes[j];
+			genes[j] = gene;
+		}
+	}
+}
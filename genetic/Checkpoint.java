@@ -0,0 +1,297 @@
+package genetic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.Product;
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Snapshot of a run: the algorithm's parameters and generator, the generation,
+ * the state of the termination criteria and every chromosome with its fitness
+ *
+ * A snapshot is a copy, taking it only copies two arrays so the evolution
+ * loop can continue while it's written. Continuing from a snapshot with the
+ * same instance gives the same results as the run that took it, and stops at
+ * the same generation by stagnation; the time limit counts the time used
+ * before the snapshot. A fingerprint of the instance is saved, a checkpoint
+ * is only read for the instance it was taken from.
+ *
+ * The file is binary, little-endian: a header with the parameters, the
+ * fitness of every individual, every gene and a CRC32 of all of it. It's
+ * written to a temporary file that then replaces the previous checkpoint, so
+ * a checkpoint is never left half written.
+ *
+ * @author ms
+ *
+ */
+public class Checkpoint {
+	private static final int MAGIC = 0x4D545350;
+	private static final int VERSION = 2;
+	// Header: magic, version, instance fingerprint, 3 ints and 2 doubles of
+	// parameters, generation, best cost, generation of its last improvement,
+	// elapsed time, 4 longs of generator state, size, n and m
+	private static final int HEADER_SIZE = 4 * 2 + 8 + 4 * 3 + 8 * 2 + 4 + 8 + 4 + 8 + 8 * 4 + 4 * 3;
+
+	private long instance;
+	private int populationSize;
+	private double mutationRate;
+	private double crossoverRate;
+	private int elitismCount;
+	private int tournamentSize;
+	private int generation;
+	private double bestCost;
+	private int lastImprovement;
+	private long elapsedMillis;
+	private long randomState[];
+	private int size;
+	private int n;
+	private int m;
+	private double fitness[];
+	private int genes[];
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Take a snapshot of a run
+	 *
+	 * @param ga
+	 *            The algorithm, it must have a generator set with setRandom
+	 * @param population
+	 *            The current population
+	 * @param generation
+	 *            The generation the run continues from
+	 * @param criteria
+	 *            The criteria of the run, their best cost and time are saved
+	 * @param instance
+	 *            Fingerprint of the instance, see fingerprint
+	 * @return checkpoint
+	 */
+	public static Checkpoint capture(GeneticAlgorithm ga, Population population, int generation,
+			TerminationCriteria criteria, long instance) {
+		if (ga.getRandom() == null) {
+			throw new IllegalArgumentException("The algorithm needs its own generator to be saved");
+		}
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.instance = instance;
+		checkpoint.bestCost = criteria.getBestCost();
+		checkpoint.lastImprovement = criteria.getLastImprovement();
+		checkpoint.elapsedMillis = criteria.getElapsedMillis();
+		checkpoint.populationSize = ga.getPopulationSize();
+		checkpoint.mutationRate = ga.getMutationRate();
+		checkpoint.crossoverRate = ga.getCrossoverRate();
+		checkpoint.elitismCount = ga.getElitismCount();
+		checkpoint.tournamentSize = ga.getTournamentSize();
+		checkpoint.generation = generation;
+		checkpoint.randomState = ga.getRandom().getState();
+		checkpoint.size = population.size();
+		checkpoint.n = population.getNumDestinations();
+		checkpoint.m = population.getNumVehicles();
+		checkpoint.fitness = new double[checkpoint.size];
+		checkpoint.genes = new int[checkpoint.size * population.getChromosomeLength()];
+		population.copyState(checkpoint.genes, checkpoint.fitness);
+		return checkpoint;
+	}
+
+	/**
+	 * Write the checkpoint, replacing the file atomically
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + this.size * 8 + this.genes.length * 4 + 8)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putLong(this.instance);
+		buffer.putInt(this.populationSize).putDouble(this.mutationRate).putDouble(this.crossoverRate);
+		buffer.putInt(this.elitismCount).putInt(this.tournamentSize);
+		buffer.putInt(this.generation);
+		buffer.putDouble(this.bestCost).putInt(this.lastImprovement).putLong(this.elapsedMillis);
+		for (long word : this.randomState) {
+			buffer.putLong(word);
+		}
+		buffer.putInt(this.size).putInt(this.n).putInt(this.m);
+		buffer.asDoubleBuffer().put(this.fitness);
+		buffer.position(buffer.position() + this.size * 8);
+		buffer.asIntBuffer().put(this.genes);
+		buffer.position(buffer.position() + this.genes.length * 4);
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putLong(crc.getValue());
+		buffer.flip();
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Read a checkpoint of an instance
+	 *
+	 * @param path
+	 * @param instance
+	 *            Fingerprint of the instance being solved, see fingerprint
+	 * @param n
+	 *            Number of destinations of the instance
+	 * @param m
+	 *            Number of vehicles of the instance
+	 * @return checkpoint
+	 * @throws IOException
+	 *             If the file can't be read, isn't a valid checkpoint or was
+	 *             taken from another instance
+	 */
+	public static Checkpoint read(Path path, long instance, int n, int m) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_SIZE + 8 || length > Integer.MAX_VALUE) {
+				throw new IOException("Not a checkpoint: " + path);
+			}
+			buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+		}
+		buffer.flip();
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.limit() - 8);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+				|| buffer.getLong(buffer.limit() - 8) != crc.getValue()) {
+			throw new IOException("Not a valid checkpoint: " + path);
+		}
+
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.instance = buffer.getLong();
+		checkpoint.populationSize = buffer.getInt();
+		checkpoint.mutationRate = buffer.getDouble();
+		checkpoint.crossoverRate = buffer.getDouble();
+		checkpoint.elitismCount = buffer.getInt();
+		checkpoint.tournamentSize = buffer.getInt();
+		checkpoint.generation = buffer.getInt();
+		checkpoint.bestCost = buffer.getDouble();
+		checkpoint.lastImprovement = buffer.getInt();
+		checkpoint.elapsedMillis = buffer.getLong();
+		checkpoint.randomState = new long[4];
+		for (int i = 0; i < 4; i++) {
+			checkpoint.randomState[i] = buffer.getLong();
+		}
+		checkpoint.size = buffer.getInt();
+		checkpoint.n = buffer.getInt();
+		checkpoint.m = buffer.getInt();
+		if (checkpoint.n != n || checkpoint.m != m) {
+			throw new IOException("Checkpoint " + path + " has " + checkpoint.n + " destinations and " + checkpoint.m
+					+ " vehicles, the instance has " + n + " and " + m);
+		}
+		if (checkpoint.instance != instance) {
+			throw new IOException("Checkpoint " + path + " was taken from another instance");
+		}
+
+		long length = (long) checkpoint.size * (checkpoint.n + 2L * checkpoint.m);
+		long expected = HEADER_SIZE + checkpoint.size * 8L + length * 4 + 8;
+		if (checkpoint.size < 0 || checkpoint.n < 0 || checkpoint.m < 0 || expected != buffer.limit()) {
+			throw new IOException("Checkpoint has the wrong size: " + path);
+		}
+		checkpoint.fitness = new double[checkpoint.size];
+		buffer.asDoubleBuffer().get(checkpoint.fitness);
+		buffer.position(buffer.position() + checkpoint.size * 8);
+		checkpoint.genes = new int[checkpoint.size * (checkpoint.n + checkpoint.m + checkpoint.m)];
+		buffer.asIntBuffer().get(checkpoint.genes);
+		return checkpoint;
+	}
+
+	/**
+	 * Create an algorithm with the saved parameters and generator
+	 *
+	 * @return ga
+	 */
+	public GeneticAlgorithm createAlgorithm() {
+		GeneticAlgorithm ga = new GeneticAlgorithm(this.populationSize, this.mutationRate, this.crossoverRate,
+				this.elitismCount, this.tournamentSize);
+		ga.setRandom(new Xoshiro256(this.randomState));
+		return ga;
+	}
+
+	/**
+	 * Create the saved population, with the saved fitness
+	 *
+	 * @return population
+	 */
+	public Population createPopulation() {
+		Population population = new Population(this.size, this.n, this.m);
+		population.restoreState(this.genes, this.fitness);
+		return population;
+	}
+
+	/**
+	 * Continue the saved criteria: best cost, generation of its last
+	 * improvement and time used
+	 *
+	 * @param criteria
+	 *            Criteria of the resumed run, already started
+	 * @return criteria
+	 */
+	public TerminationCriteria restoreCriteria(TerminationCriteria criteria) {
+		return criteria.restore(this.bestCost, this.lastImprovement, this.elapsedMillis);
+	}
+
+	/**
+	 * Get the generation the run continues from
+	 *
+	 * @return generation
+	 */
+	public int getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Get a fingerprint of an instance: a CRC32 of the coordinates and
+	 * deadlines of the destinations, the capacity, speed, cost and type of
+	 * every vehicle and whether each worker had a break
+	 *
+	 * @param products
+	 *            The destinations, in chromosome order
+	 * @param vehicles
+	 * @param workers
+	 * @return fingerprint
+	 */
+	public static long fingerprint(List<Product> products, List<Vehicle> vehicles, List<Worker> workers) {
+		ByteBuffer buffer = ByteBuffer
+				.allocate(4 + products.size() * 16 + 4 + vehicles.size() * 16 + 4 + workers.size())
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(products.size());
+		for (Product product : products) {
+			buffer.putInt(product.getX()).putInt(product.getY());
+			buffer.putLong(product.getDeadline().toEpochSecond(ZoneOffset.UTC));
+		}
+		buffer.putInt(vehicles.size());
+		for (Vehicle vehicle : vehicles) {
+			buffer.putInt(vehicle.getCapacity()).putInt(vehicle.getSpeed()).putInt(vehicle.getCostPerKm())
+					.putInt(vehicle.getType());
+		}
+		buffer.putInt(workers.size());
+		for (Worker worker : workers) {
+			buffer.put((byte) (worker.hadBreak() ? 1 : 0));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,88 @@
+package genetic;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes checkpoints on a background thread so the evolution loop doesn't
+ * wait for the disk
+ *
+ * Only the latest checkpoint matters: if a new one is saved while the
+ * previous one is still waiting to be written, the previous one is skipped.
+ *
+ * @author ms
+ *
+ */
+public class CheckpointWriter implements AutoCloseable {
+	private final Path path;
+	private final ExecutorService executor;
+	private final AtomicReference<Checkpoint> pending = new AtomicReference<>();
+	private volatile IOException error;
+
+	/**
+	 * Initialize writer
+	 *
+	 * @param path
+	 *            File replaced by each checkpoint
+	 */
+	public CheckpointWriter(Path path) {
+		this.path = path;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Write a checkpoint in the background
+	 *
+	 * @param checkpoint
+	 * @throws IOException
+	 *             If a previous checkpoint couldn't be written
+	 */
+	public void save(Checkpoint checkpoint) throws IOException {
+		if (this.error != null) {
+			throw this.error;
+		}
+		// A task is already queued if there was a pending checkpoint, it'll take this one
+		if (this.pending.getAndSet(checkpoint) == null) {
+			this.executor.execute(this::writePending);
+		}
+	}
+
+	/**
+	 * Wait until the last checkpoint is written
+	 *
+	 * @throws IOException
+	 *             If a checkpoint couldn't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	private void writePending() {
+		Checkpoint checkpoint = this.pending.getAndSet(null);
+		if (checkpoint == null) {
+			return;
+		}
+		try {
+			checkpoint.write(this.path);
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+}
@@ -0,0 +1,692 @@
+package genetic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Product;
+import model.SpatialIndex;
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Solves large instances by splitting them in smaller ones: the destinations
+ * are grouped in spatial clusters with k-means, the fleet is split between
+ * the clusters in proportion to their demand, each cluster is solved on its
+ * own and the solutions are merged into a chromosome of the whole instance
+ *
+ * Clusters hold about the same number of destinations whatever the size of
+ * the instance, so solving them takes time linear in the number of
+ * destinations. K-means starts from blocks of destinations taken in strips
+ * across the map and each destination is only compared with the centers a
+ * spatial index finds nearest, so clustering takes time linear in the number
+ * of destinations too, times the iterations. The merged solution is polished
+ * a pair of neighboring clusters at a time, never as a whole. Each cluster gets vehicles of every type in proportion to its
+ * destinations, in the order they have in the fleet, and as many workers as
+ * vehicles. A cluster its vehicles can't carry takes vehicles from clusters
+ * with room to spare or, when none can give one, hands its farthest
+ * destinations to the nearest cluster with room.
+ *
+ * @author ms
+ *
+ */
+public class Decomposition {
+	// Iterations of k-means, stops earlier when no destination changes cluster
+	private static final int MAX_ITERATIONS = 50;
+	// Centers nearest in the spatial index a destination is compared with
+	private static final int CANDIDATES = 4;
+
+	/**
+	 * Solves the instance of a cluster
+	 */
+	public interface ClusterSolver {
+		/**
+		 * @param products
+		 *            Destinations of the cluster, by deadline
+		 * @param vehicles
+		 *            Vehicles of the cluster, in fleet order
+		 * @param workers
+		 *            Workers of the cluster, at least one per vehicle
+		 * @param seed
+		 *            Seed of the cluster
+		 * @return chromosome Solution of the cluster's instance
+		 */
+		int[] solve(ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers, long seed);
+	}
+
+	/**
+	 * Improves the solution of two neighboring clusters together
+	 */
+	public interface BoundaryPolisher {
+		/**
+		 * @param products
+		 *            Destinations of both clusters, by deadline
+		 * @param vehicles
+		 *            Vehicles of both clusters, in fleet order
+		 * @param workers
+		 *            Workers of both clusters
+		 * @param chromosome
+		 *            Current solution of the two clusters
+		 * @return chromosome The improved solution
+		 */
+		int[] polish(ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+				int[] chromosome);
+	}
+
+	private ArrayList<Product> products;
+	private ArrayList<Vehicle> vehicles;
+	private ArrayList<Worker> workers;
+	private long seed;
+	private int concurrency = Runtime.getRuntime().availableProcessors();
+
+	// Destinations, vehicles and workers of each cluster, in ascending order
+	private int clusterDestinations[][];
+	private int clusterVehicles[][];
+	private int clusterWorkers[][];
+
+	/**
+	 * Split an instance in clusters
+	 *
+	 * @param products
+	 *            The destinations, by deadline
+	 * @param vehicles
+	 *            The fleet
+	 * @param workers
+	 *            The workers, at least as many as vehicles
+	 * @param clusterSize
+	 *            Destinations per cluster on average
+	 * @param seed
+	 *            Seed the seeds of the cluster solvers are derived from
+	 */
+	public Decomposition(ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+			int clusterSize, long seed) {
+		if (clusterSize < 1) {
+			throw new IllegalArgumentException("Cluster size must be at least 1");
+		}
+		this.products = products;
+		this.vehicles = vehicles;
+		this.workers = workers;
+		this.seed = seed;
+
+		int n = products.size();
+		int k = (int) Math.max(1, Math.min((n + (long) clusterSize - 1) / clusterSize, vehicles.size()));
+		int cluster[] = this.cluster(k);
+		this.splitFleet(cluster, k);
+	}
+
+	/**
+	 * Set the number of clusters solved at once
+	 *
+	 * @param concurrency
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	public int getNumClusters() {
+		return this.clusterDestinations.length;
+	}
+
+	/**
+	 * Get the destinations of a cluster
+	 *
+	 * @param cluster
+	 * @return destinations Positions in the products, ascending
+	 */
+	public int[] getDestinations(int cluster) {
+		return this.clusterDestinations[cluster].clone();
+	}
+
+	/**
+	 * Get the vehicles of a cluster
+	 *
+	 * @param cluster
+	 * @return vehicles Positions in the fleet, ascending
+	 */
+	public int[] getVehicles(int cluster) {
+		return this.clusterVehicles[cluster].clone();
+	}
+
+	/**
+	 * Group the destinations with k-means
+	 *
+	 * The first centers are the means of k blocks of destinations taken in
+	 * strips across the map, so they're spread like the destinations. Each
+	 * destination goes to the nearest, in straight line, of the centers
+	 * nearest to it in a spatial index of the rounded centers.
+	 *
+	 * @return cluster Cluster of each destination
+	 */
+	private int[] cluster(int k) {
+		int n = this.products.size();
+		int cluster[] = new int[n];
+		if (n == 0) {
+			return cluster;
+		}
+		double x[] = new double[n];
+		double y[] = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = this.products.get(i).getX();
+			y[i] = this.products.get(i).getY();
+		}
+
+		// About sqrt(k) strips by y, each one by x going back and forth
+		int strips = (int) Math.max(1, Math.round(Math.sqrt(k)));
+		long keys[] = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = ((long) this.products.get(i).getY() << 32) | i;
+		}
+		Arrays.sort(keys);
+		int order[] = new int[n];
+		for (int s = 0; s < strips; s++) {
+			int from = (int) ((long) n * s / strips);
+			int to = (int) ((long) n * (s + 1) / strips);
+			long strip[] = new long[to - from];
+			for (int p = from; p < to; p++) {
+				int i = (int) keys[p];
+				strip[p - from] = ((long) this.products.get(i).getX() << 32) | i;
+			}
+			Arrays.sort(strip);
+			for (int p = 0; p < strip.length; p++) {
+				order[s % 2 == 0 ? from + p : to - 1 - p] = (int) strip[p];
+			}
+		}
+		double centerX[] = new double[k];
+		double centerY[] = new double[k];
+		int size[] = new int[k];
+		for (int p = 0; p < n; p++) {
+			int c = (int) ((long) p * k / n);
+			centerX[c] += x[order[p]];
+			centerY[c] += y[order[p]];
+			size[c]++;
+		}
+		for (int c = 0; c < k; c++) {
+			if (size[c] > 0) {
+				centerX[c] /= size[c];
+				centerY[c] /= size[c];
+			}
+		}
+
+		Arrays.fill(cluster, -1);
+		double sumX[] = new double[k];
+		double sumY[] = new double[k];
+		int roundedX[] = new int[k];
+		int roundedY[] = new int[k];
+		int nearest[] = new int[CANDIDATES];
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			for (int c = 0; c < k; c++) {
+				roundedX[c] = (int) Math.round(centerX[c]);
+				roundedY[c] = (int) Math.round(centerY[c]);
+			}
+			SpatialIndex centers = SpatialIndex.of(roundedX, roundedY);
+			boolean changed = false;
+			for (int i = 0; i < n; i++) {
+				int count = centers.nearest(this.products.get(i).getX(), this.products.get(i).getY(), CANDIDATES, -1,
+						nearest, 0);
+				int best = nearest[0];
+				double bestDistance = Double.MAX_VALUE;
+				for (int q = 0; q < count; q++) {
+					int c = nearest[q];
+					double distance = square(x[i] - centerX[c]) + square(y[i] - centerY[c]);
+					if (distance < bestDistance || distance == bestDistance && c < best) {
+						bestDistance = distance;
+						best = c;
+					}
+				}
+				changed |= cluster[i] != best;
+				cluster[i] = best;
+			}
+			if (!changed) {
+				break;
+			}
+
+			// Centers move to the mean of their destinations, empty clusters keep theirs
+			Arrays.fill(sumX, 0);
+			Arrays.fill(sumY, 0);
+			Arrays.fill(size, 0);
+			for (int i = 0; i < n; i++) {
+				sumX[cluster[i]] += x[i];
+				sumY[cluster[i]] += y[i];
+				size[cluster[i]]++;
+			}
+			for (int c = 0; c < k; c++) {
+				if (size[c] > 0) {
+					centerX[c] = sumX[c] / size[c];
+					centerY[c] = sumY[c] / size[c];
+				}
+			}
+		}
+		return cluster;
+	}
+
+	private static double square(double value) {
+		return value * value;
+	}
+
+	/**
+	 * Split the vehicles of each type between the clusters in proportion to
+	 * their destinations, make every cluster able to carry its destinations
+	 * and give each one as many workers as vehicles
+	 */
+	private void splitFleet(int[] cluster, int k) {
+		int n = this.products.size();
+		int m = this.vehicles.size();
+		int demand[] = new int[k];
+		for (int i = 0; i < n; i++) {
+			demand[cluster[i]]++;
+		}
+
+		// Largest remainder method for each vehicle type
+		int owner[] = new int[m];
+		boolean done[] = new boolean[m];
+		for (int j = 0; j < m; j++) {
+			if (done[j]) {
+				continue;
+			}
+			int type = this.vehicles.get(j).getType();
+			List<Integer> ofType = new ArrayList<Integer>();
+			for (int v = j; v < m; v++) {
+				if (this.vehicles.get(v).getType() == type) {
+					ofType.add(v);
+					done[v] = true;
+				}
+			}
+			int count = ofType.size();
+			int quota[] = new int[k];
+			Integer byRemainder[] = new Integer[k];
+			int given = 0;
+			for (int c = 0; c < k; c++) {
+				quota[c] = n == 0 ? 0 : (int) ((long) count * demand[c] / n);
+				given += quota[c];
+				byRemainder[c] = c;
+			}
+			Arrays.sort(byRemainder, (a, b) -> Long.compare((long) count * demand[b] % Math.max(1, n),
+					(long) count * demand[a] % Math.max(1, n)));
+			for (int r = 0; given < count; r = (r + 1) % k, given++) {
+				quota[byRemainder[r]]++;
+			}
+			for (int c = 0, p = 0; c < k; c++) {
+				for (int q = 0; q < quota[c]; q++) {
+					owner[ofType.get(p++)] = c;
+				}
+			}
+		}
+
+		int capacity[] = new int[k];
+		int fleet[] = new int[k];
+		for (int j = 0; j < m; j++) {
+			capacity[owner[j]] += this.vehicles.get(j).getCapacity();
+			fleet[owner[j]]++;
+		}
+		this.repair(cluster, demand, capacity, fleet, owner, k);
+
+		// Clusters left without destinations give their vehicles to the first one with destinations
+		int index[] = new int[k];
+		int clusters = 0;
+		for (int c = 0; c < k; c++) {
+			index[c] = demand[c] > 0 || n == 0 && c == 0 ? clusters++ : -1;
+		}
+		int first = 0;
+		while (index[first] == -1) {
+			first++;
+		}
+		this.clusterDestinations = new int[clusters][];
+		this.clusterVehicles = new int[clusters][];
+		this.clusterWorkers = new int[clusters][];
+		int destinationCount[] = new int[clusters];
+		int vehicleCount[] = new int[clusters];
+		for (int i = 0; i < n; i++) {
+			destinationCount[index[cluster[i]]]++;
+		}
+		for (int j = 0; j < m; j++) {
+			owner[j] = index[owner[j]] != -1 ? index[owner[j]] : index[first];
+			vehicleCount[owner[j]]++;
+		}
+		for (int c = 0; c < clusters; c++) {
+			this.clusterDestinations[c] = new int[destinationCount[c]];
+			this.clusterVehicles[c] = new int[vehicleCount[c]];
+			destinationCount[c] = 0;
+			vehicleCount[c] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			int c = index[cluster[i]];
+			this.clusterDestinations[c][destinationCount[c]++] = i;
+		}
+		for (int j = 0; j < m; j++) {
+			this.clusterVehicles[owner[j]][vehicleCount[owner[j]]++] = j;
+		}
+
+		// Workers in order, as many as vehicles, the ones left over to the last cluster
+		for (int c = 0, l = 0; c < clusters; c++) {
+			int count = c == clusters - 1 ? this.workers.size() - l : vehicleCount[c];
+			if (l + count > this.workers.size()) {
+				throw new IllegalStateException("There must be at least as many workers as vehicles");
+			}
+			this.clusterWorkers[c] = new int[count];
+			for (int w = 0; w < count; w++) {
+				this.clusterWorkers[c][w] = l++;
+			}
+		}
+	}
+
+	/**
+	 * Give every cluster with destinations at least a vehicle and enough
+	 * capacity, moving vehicles or destinations between clusters
+	 */
+	private void repair(int[] cluster, int[] demand, int[] capacity, int[] fleet, int[] owner, int k) {
+		int n = this.products.size();
+		int m = this.vehicles.size();
+		while (true) {
+			int shortCluster = -1;
+			for (int c = 0; c < k && shortCluster == -1; c++) {
+				if (demand[c] > 0 && (capacity[c] < demand[c] || fleet[c] == 0)) {
+					shortCluster = c;
+				}
+			}
+			if (shortCluster == -1) {
+				return;
+			}
+
+			// Largest vehicle another cluster can spare
+			int donated = -1;
+			for (int j = 0; j < m; j++) {
+				int c = owner[j];
+				int vehicleCapacity = this.vehicles.get(j).getCapacity();
+				if (c != shortCluster && capacity[c] - vehicleCapacity >= demand[c] && (fleet[c] > 1 || demand[c] == 0)
+						&& (donated == -1 || vehicleCapacity > this.vehicles.get(donated).getCapacity())) {
+					donated = j;
+				}
+			}
+			if (donated != -1) {
+				int c = owner[donated];
+				int vehicleCapacity = this.vehicles.get(donated).getCapacity();
+				capacity[c] -= vehicleCapacity;
+				fleet[c]--;
+				owner[donated] = shortCluster;
+				capacity[shortCluster] += vehicleCapacity;
+				fleet[shortCluster]++;
+				continue;
+			}
+
+			// Otherwise the destination farthest from the others of the cluster goes to the nearest cluster with room
+			double centerX = 0, centerY = 0;
+			for (int i = 0; i < n; i++) {
+				if (cluster[i] == shortCluster) {
+					centerX += this.products.get(i).getX();
+					centerY += this.products.get(i).getY();
+				}
+			}
+			centerX /= demand[shortCluster];
+			centerY /= demand[shortCluster];
+			int farthest = -1;
+			double farthestDistance = -1;
+			for (int i = 0; i < n; i++) {
+				double distance = square(this.products.get(i).getX() - centerX)
+						+ square(this.products.get(i).getY() - centerY);
+				if (cluster[i] == shortCluster && distance > farthestDistance) {
+					farthestDistance = distance;
+					farthest = i;
+				}
+			}
+			int receiver = -1;
+			double receiverDistance = Double.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				int c = cluster[i];
+				if (c != shortCluster && capacity[c] > demand[c] && fleet[c] > 0) {
+					double distance = this.products.get(i).distanceFrom(this.products.get(farthest));
+					if (distance < receiverDistance) {
+						receiverDistance = distance;
+						receiver = c;
+					}
+				}
+			}
+			if (receiver == -1) {
+				throw new IllegalStateException("The vehicles can't carry the " + n + " destinations");
+			}
+			cluster[farthest] = receiver;
+			demand[shortCluster]--;
+			demand[receiver]++;
+		}
+	}
+
+	/**
+	 * Solve every cluster at the same time and merge their solutions, each
+	 * vehicle keeps the route and worker it got in its cluster
+	 *
+	 * @param solver
+	 *            Function solving a cluster, called from several threads
+	 * @return individual Solution of the whole instance, not evaluated
+	 */
+	public Individual solve(ClusterSolver solver) {
+		int clusters = this.getNumClusters();
+		int solutions[][] = new int[clusters][];
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.concurrency, clusters)));
+		try {
+			List<Future<int[]>> futures = new ArrayList<>();
+			for (int c = 0; c < clusters; c++) {
+				final ArrayList<Product> products = select(this.products, this.clusterDestinations[c]);
+				final ArrayList<Vehicle> vehicles = select(this.vehicles, this.clusterVehicles[c]);
+				final ArrayList<Worker> workers = select(this.workers, this.clusterWorkers[c]);
+				final long seed = this.seed(c);
+				futures.add(executor.submit(() -> solver.solve(products, vehicles, workers, seed)));
+			}
+			for (int c = 0; c < clusters; c++) {
+				solutions[c] = futures.get(c).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while solving the clusters", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A cluster failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return new Individual(this.merge(solutions));
+	}
+
+	private static <T> ArrayList<T> select(ArrayList<T> list, int[] positions) {
+		ArrayList<T> selected = new ArrayList<T>(positions.length);
+		for (int position : positions) {
+			selected.add(list.get(position));
+		}
+		return selected;
+	}
+
+	/**
+	 * Seed of a cluster, derived from the seed of the decomposition
+	 */
+	private long seed(int cluster) {
+		return RandomStreams.mix(this.seed, cluster);
+	}
+
+	/**
+	 * Improve a merged solution a pair of neighboring clusters at a time, each
+	 * cluster paired with the one whose center is nearest. Destinations can
+	 * move between the vehicles of the pair, the pairs are polished one after
+	 * another.
+	 *
+	 * @param merged
+	 *            Solution of the whole instance, see solve
+	 * @param polisher
+	 *            Function improving the solution of a pair
+	 * @return individual The polished solution, not evaluated
+	 */
+	public Individual polishBoundaries(Individual merged, BoundaryPolisher polisher) {
+		int n = this.products.size();
+		int m = this.vehicles.size();
+		int chromosome[] = merged.getChromosome();
+		int routes[][] = new int[m][];
+		int worker[] = new int[m];
+		for (int j = 0, k = 0; j < m; j++) {
+			int count = chromosome[n + j];
+			routes[j] = Arrays.copyOfRange(chromosome, k, k + count);
+			worker[j] = chromosome[n + m + j];
+			k += count;
+		}
+
+		// Position of each destination and worker in the pair being polished
+		int local[] = new int[n];
+		int localWorker[] = new int[this.workers.size()];
+		for (int pair[] : this.neighbors()) {
+			int vehicles[] = union(this.clusterVehicles[pair[0]], this.clusterVehicles[pair[1]]);
+			int workers[] = union(this.clusterWorkers[pair[0]], this.clusterWorkers[pair[1]]);
+			int pairN = 0;
+			for (int j : vehicles) {
+				pairN += routes[j].length;
+			}
+			if (pairN == 0) {
+				continue;
+			}
+
+			// Destinations of the pair in ascending order, so still by deadline
+			int destinations[] = new int[pairN];
+			int p = 0;
+			for (int j : vehicles) {
+				for (int destination : routes[j]) {
+					destinations[p++] = destination;
+				}
+			}
+			Arrays.sort(destinations);
+			for (int i = 0; i < pairN; i++) {
+				local[destinations[i]] = i;
+			}
+			for (int l = 0; l < workers.length; l++) {
+				localWorker[workers[l]] = l;
+			}
+
+			int pairM = vehicles.length;
+			int pairChromosome[] = new int[pairN + 2 * pairM];
+			for (int v = 0, k = 0; v < pairM; v++) {
+				int j = vehicles[v];
+				for (int destination : routes[j]) {
+					pairChromosome[k++] = local[destination];
+				}
+				pairChromosome[pairN + v] = routes[j].length;
+				pairChromosome[pairN + pairM + v] = localWorker[worker[j]];
+			}
+
+			int polished[] = polisher.polish(select(this.products, destinations), select(this.vehicles, vehicles),
+					select(this.workers, workers), pairChromosome);
+			for (int v = 0, k = 0; v < pairM; v++) {
+				int j = vehicles[v];
+				routes[j] = new int[polished[pairN + v]];
+				for (int q = 0; q < routes[j].length; q++) {
+					routes[j][q] = destinations[polished[k++]];
+				}
+				worker[j] = workers[polished[pairN + pairM + v]];
+			}
+		}
+		return new Individual(chromosome(routes, worker, n));
+	}
+
+	/**
+	 * Pair every cluster with the one whose center is nearest
+	 *
+	 * @return pairs Each pair once, the lower cluster first
+	 */
+	private List<int[]> neighbors() {
+		int clusters = this.getNumClusters();
+		int x[] = new int[clusters];
+		int y[] = new int[clusters];
+		for (int c = 0; c < clusters; c++) {
+			long sumX = 0, sumY = 0;
+			for (int i : this.clusterDestinations[c]) {
+				sumX += this.products.get(i).getX();
+				sumY += this.products.get(i).getY();
+			}
+			int size = Math.max(1, this.clusterDestinations[c].length);
+			x[c] = (int) Math.round((double) sumX / size);
+			y[c] = (int) Math.round((double) sumY / size);
+		}
+
+		SpatialIndex centers = SpatialIndex.of(x, y);
+		List<int[]> pairs = new ArrayList<>();
+		Set<Long> seen = new HashSet<>();
+		int nearest[] = new int[1];
+		for (int c = 0; c < clusters; c++) {
+			if (centers.nearest(x[c], y[c], 1, c, nearest, 0) == 0) {
+				continue;
+			}
+			int a = Math.min(c, nearest[0]), b = Math.max(c, nearest[0]);
+			if (seen.add((long) a * clusters + b)) {
+				pairs.add(new int[] { a, b });
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Merge two ascending arrays without repeated elements
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int union[] = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length || j < b.length) {
+			if (j == b.length || i < a.length && a[i] < b[j]) {
+				union[k++] = a[i++];
+			} else {
+				union[k++] = b[j++];
+			}
+		}
+		return union;
+	}
+
+	/**
+	 * Build the chromosome of the whole instance from the solutions of the
+	 * clusters
+	 *
+	 * @param solutions
+	 *            Chromosome of each cluster
+	 * @return chromosome
+	 */
+	int[] merge(int[][] solutions) {
+		int n = this.products.size();
+		int m = this.vehicles.size();
+		int routes[][] = new int[m][];
+		int worker[] = new int[m];
+		for (int c = 0; c < solutions.length; c++) {
+			int destinations[] = this.clusterDestinations[c];
+			int vehicles[] = this.clusterVehicles[c];
+			int clusterN = destinations.length;
+			int clusterM = vehicles.length;
+			for (int j = 0, k = 0; j < clusterM; j++) {
+				int count = solutions[c][clusterN + j];
+				routes[vehicles[j]] = new int[count];
+				for (int p = 0; p < count; p++) {
+					routes[vehicles[j]][p] = destinations[solutions[c][k++]];
+				}
+				worker[vehicles[j]] = this.clusterWorkers[c][solutions[c][clusterN + clusterM + j]];
+			}
+		}
+
+		return chromosome(routes, worker, n);
+	}
+
+	/**
+	 * Build a chromosome from the route and worker of every vehicle
+	 */
+	private static int[] chromosome(int[][] routes, int[] worker, int n) {
+		int m = routes.length;
+		int chromosome[] = new int[n + 2 * m];
+		for (int j = 0, k = 0; j < m; j++) {
+			System.arraycopy(routes[j], 0, chromosome, k, routes[j].length);
+			k += routes[j].length;
+			chromosome[n + j] = routes[j].length;
+			chromosome[n + m + j] = worker[j];
+		}
+		return chromosome;
+	}
+}
@@ -0,0 +1,131 @@
+package genetic;
+
+import java.util.ArrayList;
+
+import model.Product;
+
+/**
+ * Distances between every pair of destinations and the depot, calculated once
+ * before the genetic algorithm starts so routes don't have to compute them
+ * again for every individual.
+ *
+ * Destinations are indexed the same way as in the chromosome, by their
+ * position in the products list, and the depot takes the last index. Manhattan
+ * distances between integer coordinates are integers and the matrix is
+ * symmetric with a zero diagonal, so only the lower triangle is stored. The
+ * triangle is indexed with ints, up to 65535 points; larger instances, or
+ * ones where only a few distances are needed, can calculate each distance
+ * from the coordinates instead, see computed.
+ *
+ * @author ms
+ *
+ */
+public class DistanceMatrix {
+	// Points past this can't be indexed in the triangle
+	private static final int MAX_STORED = 65535;
+
+	private int size;
+	private int[] x;
+	private int[] y;
+	// Lower triangle, null when distances are calculated on every call
+	private int[] distances;
+
+	/**
+	 * Calculate distances between products and depot
+	 *
+	 * @param products
+	 *            The destinations referenced by the chromosome
+	 * @param depot
+	 *            The origin point of every route
+	 */
+	public DistanceMatrix(ArrayList<Product> products, Product depot) {
+		this(products, depot, true);
+	}
+
+	private DistanceMatrix(ArrayList<Product> products, Product depot, boolean stored) {
+		int n = products.size();
+		this.size = n + 1;
+
+		int[] x = new int[this.size];
+		int[] y = new int[this.size];
+		for (int i = 0; i < n; i++) {
+			x[i] = products.get(i).getX();
+			y[i] = products.get(i).getY();
+		}
+		x[n] = depot.getX();
+		y[n] = depot.getY();
+		this.x = x;
+		this.y = y;
+		if (!stored) {
+			return;
+		}
+		if (this.size > MAX_STORED) {
+			throw new IllegalArgumentException(
+					"Can't store the distances of " + this.size + " points, at most " + MAX_STORED);
+		}
+
+		this.distances = new int[(int) ((long) this.size * (this.size - 1) / 2)];
+		int k = 0;
+		for (int i = 1; i < this.size; i++) {
+			for (int j = 0; j < i; j++) {
+				this.distances[k++] = Math.abs(x[i] - x[j]) + Math.abs(y[i] - y[j]);
+			}
+		}
+	}
+
+	/**
+	 * Get distances calculated from the coordinates on every call, in linear
+	 * time and memory, for instances where only some of them are needed
+	 *
+	 * @param products
+	 *            The destinations referenced by the chromosome
+	 * @param depot
+	 *            The origin point of every route
+	 * @return distances
+	 */
+	public static DistanceMatrix computed(ArrayList<Product> products, Product depot) {
+		return new DistanceMatrix(products, depot, false);
+	}
+
+	/**
+	 * Get distance between two destinations
+	 *
+	 * @param i
+	 *            Index of the first destination or the depot
+	 * @param j
+	 *            Index of the second destination or the depot
+	 * @return distance The Manhattan distance between them
+	 */
+	public int distance(int i, int j) {
+		if (this.distances == null) {
+			return Math.abs(this.x[i] - this.x[j]) + Math.abs(this.y[i] - this.y[j]);
+		}
+		if (i == j) {
+			return 0;
+		}
+		if (i < j) {
+			int aux = i;
+			i = j;
+			j = aux;
+		}
+		return this.distances[((i * (i - 1)) >>> 1) + j];
+	}
+
+	/**
+	 * Get the index of the depot
+	 *
+	 * @return index
+	 */
+	public int getDepot() {
+		return this.size - 1;
+	}
+
+	/**
+	 * Get the number of points, destinations plus depot
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return this.size;
+	}
+}
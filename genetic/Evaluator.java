@@ -0,0 +1,448 @@
+package genetic;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Evaluation kernel for the chromosome, calculates the same costs as Routes
+ * and Route but walking the individual's genes in place, without building any
+ * object, so it can be called for every individual in every generation.
+ *
+ * Everything the cost depends on is read once into primitive arrays when the
+ * evaluator is created. The evaluator holds no state between calls and can be
+ * shared by any number of threads. Costs are returned in fixed-point, see
+ * TimeModel.COST_SCALE.
+ *
+ * @author ms
+ *
+ */
+public class Evaluator {
+	/**
+	 * Positions of each part of the cost in a breakdown buffer
+	 */
+	public static final int DISTANCE_COST = 0;
+	public static final int OVERTIME_COST = 1;
+	public static final int PENALTY_COST = 2;
+	public static final int BREAKDOWN_SIZE = 3;
+
+	private int n;
+	private int m;
+	private DistanceMatrix distanceMatrix;
+	private TimeModel timeModel;
+
+	private int[] speed;
+	private int[] costPerKm;
+	private int[] capacity;
+	private int[] otRate;
+	private boolean[] hadBreak;
+	private int lateDeliveryPenalty;
+	// Calculated on first use, -1 until then
+	private volatile long lowerBound = -1;
+
+	/**
+	 * Initialize evaluator
+	 *
+	 * @param vehicles
+	 *            The vehicles referenced by the second part of the chromosome
+	 * @param workers
+	 *            The workers referenced by the third part of the chromosome
+	 * @param distanceMatrix
+	 *            Distances between destinations and depot
+	 * @param timeModel
+	 *            Deadlines, shift and break in minutes
+	 * @param overtimeBike
+	 *            Overtime rate for bikes
+	 * @param overtimeCar
+	 *            Overtime rate for cars
+	 * @param lateDeliveryPenalty
+	 *            Penalty per hour or fraction of late delivery
+	 */
+	public Evaluator(ArrayList<Vehicle> vehicles, ArrayList<Worker> workers, DistanceMatrix distanceMatrix,
+			TimeModel timeModel, int overtimeBike, int overtimeCar, int lateDeliveryPenalty) {
+		this.n = distanceMatrix.size() - 1;
+		this.m = vehicles.size();
+		this.distanceMatrix = distanceMatrix;
+		this.timeModel = timeModel;
+
+		this.speed = new int[this.m];
+		this.costPerKm = new int[this.m];
+		this.capacity = new int[this.m];
+		this.otRate = new int[this.m];
+		for (int j = 0; j < this.m; j++) {
+			Vehicle vehicle = vehicles.get(j);
+			this.speed[j] = vehicle.getSpeed();
+			this.costPerKm[j] = vehicle.getCostPerKm();
+			this.capacity[j] = vehicle.getCapacity();
+			this.otRate[j] = vehicle.getType() == 0 ? overtimeBike : overtimeCar;
+		}
+
+		this.hadBreak = new boolean[workers.size()];
+		for (int l = 0; l < this.hadBreak.length; l++) {
+			this.hadBreak[l] = workers.get(l).hadBreak();
+		}
+		this.lateDeliveryPenalty = lateDeliveryPenalty;
+	}
+
+	/**
+	 * Cost every solution has at least: each destination is reached from the
+	 * depot or another destination, at least its nearest one, with the
+	 * cheapest vehicle. Overtime and penalties can only add to it.
+	 */
+	private long calculateLowerBound() {
+		int minCostPerKm = Integer.MAX_VALUE;
+		for (int j = 0; j < this.m; j++) {
+			minCostPerKm = Math.min(minCostPerKm, this.costPerKm[j]);
+		}
+		long distance = 0;
+		for (int i = 0; i < this.n; i++) {
+			int nearest = this.distanceMatrix.distance(this.distanceMatrix.getDepot(), i);
+			for (int k = 0; k < this.n; k++) {
+				if (k != i) {
+					nearest = Math.min(nearest, this.distanceMatrix.distance(k, i));
+				}
+			}
+			distance += nearest;
+		}
+		return this.m == 0 ? 0 : distance * minCostPerKm * TimeModel.COST_SCALE;
+	}
+
+	/**
+	 * Get the total cost of an individual
+	 *
+	 * Individuals stored in a population keep the cost of each route, only the
+	 * routes marked as changed are evaluated and their cost is stored.
+	 *
+	 * @param individual
+	 *            The individual to evaluate
+	 * @return cost The cost of every route in fixed-point
+	 */
+	public long evaluate(Individual individual) {
+		Population population = individual.getOwner();
+		if (population == null) {
+			return this.evaluate(individual, (long[]) null);
+		}
+
+		// Only the routes changed since the last evaluation are calculated
+		int row = individual.getRow();
+		long cost = 0;
+		for (int j = 0, k = 0; j < this.m; j++) {
+			int count = individual.getGene(this.n + j);
+			if (population.isRouteDirty(row, j)) {
+				long routeCost = this.routeCost(individual, k, count, j, individual.getGene(this.n + this.m + j), null);
+				population.setRouteCost(row, j, routeCost);
+				cost += routeCost;
+			} else {
+				cost += population.getRouteCost(row, j);
+			}
+			k += count;
+		}
+		return cost;
+	}
+
+	/**
+	 * Get the total cost of an individual and add its parts to a breakdown
+	 *
+	 * @param individual
+	 *            The individual to evaluate
+	 * @param breakdown
+	 *            Buffer of BREAKDOWN_SIZE where the distance, overtime and
+	 *            penalty costs are added, may be null. Each thread should use
+	 *            its own buffer.
+	 * @return cost The cost of every route in fixed-point
+	 */
+	public long evaluate(Individual individual, long[] breakdown) {
+		long cost = 0;
+		for (int j = 0, k = 0; j < this.m; j++) {
+			int count = individual.getGene(this.n + j);
+			cost += this.routeCost(individual, k, count, j, individual.getGene(this.n + this.m + j), breakdown);
+			k += count;
+		}
+		return cost;
+	}
+
+	/**
+	 * Get the total cost of an individual evaluating its routes in parallel
+	 *
+	 * Like evaluate(Individual), individuals stored in a population only get
+	 * their changed routes evaluated, and their cost is stored once every
+	 * thread finished.
+	 *
+	 * @param individual
+	 *            The individual to evaluate
+	 * @param pool
+	 *            The pool to evaluate the routes on
+	 * @return cost The cost of every route in fixed-point
+	 */
+	public long evaluate(Individual individual, ForkJoinPool pool) {
+		Population population = individual.getOwner();
+		if (population == null) {
+			return pool.invoke(new RouteTask(individual, 0, this.m, null));
+		}
+
+		// Threads only write their own routes' costs, dirty bits share words so they're cleared here
+		long costs[] = new long[this.m];
+		long cost = pool.invoke(new RouteTask(individual, 0, this.m, costs));
+		int row = individual.getRow();
+		for (int j = 0; j < this.m; j++) {
+			if (population.isRouteDirty(row, j)) {
+				population.setRouteCost(row, j, costs[j]);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Get the cost of a single route
+	 *
+	 * Same rules as Route.getCost: distance cost, overtime past the end of the
+	 * shift, and late delivery penalty for every started hour past each
+	 * deadline. Routes ending past the break's first hour start after it when
+	 * the worker had no break.
+	 *
+	 * @param individual
+	 *            The individual the route belongs to
+	 * @param start
+	 *            Position of the route's first destination in the chromosome
+	 * @param count
+	 *            Number of destinations in the route
+	 * @param vehicle
+	 *            Index of the vehicle
+	 * @param worker
+	 *            Index of the worker
+	 * @param breakdown
+	 *            Buffer where the parts of the cost are added, may be null
+	 * @return cost The route's cost in fixed-point
+	 */
+	public long routeCost(Individual individual, int start, int count, int vehicle, int worker, long[] breakdown) {
+		return this.routeCost(individual.getStorage(), individual.getOffset() + start, count, vehicle, worker,
+				breakdown);
+	}
+
+	/**
+	 * Get the cost of a route given as an array of destinations, the same as
+	 * if they were part of a chromosome
+	 *
+	 * @param destinations
+	 *            Array holding the route
+	 * @param start
+	 *            Position of the route's first destination in the array
+	 * @param count
+	 *            Number of destinations in the route
+	 * @param vehicle
+	 *            Index of the vehicle
+	 * @param worker
+	 *            Index of the worker
+	 * @param breakdown
+	 *            Buffer where the parts of the cost are added, may be null
+	 * @return cost The route's cost in fixed-point
+	 */
+	public long routeCost(int[] destinations, int start, int count, int vehicle, int worker, long[] breakdown) {
+		if (count == 0) {
+			return 0;
+		}
+		int depot = this.distanceMatrix.getDepot();
+		int end = start + count;
+
+		// Get route distance
+		int distance = 0;
+		for (int i = start, prev = depot; i < end; i++) {
+			int destination = destinations[i];
+			distance += this.distanceMatrix.distance(prev, destination);
+			prev = destination;
+		}
+		long distanceCost = (long) distance * this.costPerKm[vehicle] * TimeModel.COST_SCALE;
+
+		// Get route's start time and overtime cost
+		int startTime = this.startTime(distance, vehicle, worker);
+		long otCost = this.overtimeCost(startTime, distance, vehicle);
+
+		// Get late delivery penalty cost
+		long lateHours = 0;
+		int aTime = startTime;
+		for (int i = start, prev = depot; i < end; i++) {
+			int destination = destinations[i];
+			aTime += TimeModel.travelMinutes(this.distanceMatrix.distance(prev, destination), this.speed[vehicle]);
+			lateHours += lateHours(aTime - this.timeModel.getDeadline(destination));
+			prev = destination;
+		}
+		long lateCost = lateHours * this.getLatePenalty();
+
+		if (breakdown != null) {
+			breakdown[DISTANCE_COST] += distanceCost;
+			breakdown[OVERTIME_COST] += otCost;
+			breakdown[PENALTY_COST] += lateCost;
+		}
+		return distanceCost + otCost + lateCost;
+	}
+
+	/**
+	 * Get when a route starts: at the start of the shift, or after the break
+	 * when the worker had no break and the route would end past its first hour
+	 *
+	 * @param distance
+	 *            Length of the route
+	 * @param vehicle
+	 *            Index of the vehicle
+	 * @param worker
+	 *            Index of the worker
+	 * @return minutes Since the starting time
+	 */
+	public int startTime(int distance, int vehicle, int worker) {
+		int duration = TimeModel.travelMinutes(distance, this.speed[vehicle]);
+		if (!this.hadBreak[worker] && 0 <= this.timeModel.getBreakEnd()
+				&& duration > this.timeModel.getBreakEnd() - 60) {
+			return this.timeModel.getBreakStart() + 60;
+		}
+		return 0;
+	}
+
+	/**
+	 * Get the overtime cost of a route ending past the end of the shift
+	 *
+	 * @param startTime
+	 *            When the route starts, see startTime
+	 * @param distance
+	 *            Length of the route
+	 * @param vehicle
+	 *            Index of the vehicle
+	 * @return cost In fixed-point
+	 */
+	public long overtimeCost(int startTime, int distance, int vehicle) {
+		int endTime = startTime + TimeModel.travelMinutes(distance, this.speed[vehicle]);
+		if (endTime > this.timeModel.getShiftEnd()) {
+			return (long) this.otRate[vehicle] * (endTime - this.timeModel.getShiftEnd());
+		}
+		return 0;
+	}
+
+	/**
+	 * Get the started hours of a late delivery
+	 *
+	 * @param lateness
+	 *            Minutes from the deadline to the arrival, negative when on
+	 *            time
+	 * @return hours
+	 */
+	public static int lateHours(int lateness) {
+		return lateness > 0 ? (lateness + 59) / 60 : 0;
+	}
+
+	/**
+	 * Get the penalty of each started hour of a late delivery
+	 *
+	 * @return cost In fixed-point
+	 */
+	public long getLatePenalty() {
+		return (long) this.lateDeliveryPenalty * TimeModel.COST_SCALE;
+	}
+
+	/**
+	 * Convert a fixed-point cost to the individual's fitness
+	 *
+	 * @param cost
+	 * @return fitness
+	 */
+	public static double toFitness(long cost) {
+		return 1 / ((double) cost / TimeModel.COST_SCALE);
+	}
+
+	/**
+	 * Get a lower bound of the cost of any solution, from the distance to the
+	 * nearest point of every destination
+	 *
+	 * @return cost
+	 */
+	public double getLowerBound() {
+		if (this.lowerBound < 0) {
+			this.lowerBound = this.calculateLowerBound();
+		}
+		return (double) this.lowerBound / TimeModel.COST_SCALE;
+	}
+
+	public int getNumDestinations() {
+		return this.n;
+	}
+
+	public int getNumVehicles() {
+		return this.m;
+	}
+
+	public int getNumWorkers() {
+		return this.hadBreak.length;
+	}
+
+	public int getCapacity(int vehicle) {
+		return this.capacity[vehicle];
+	}
+
+	public int getCostPerKm(int vehicle) {
+		return this.costPerKm[vehicle];
+	}
+
+	public int getSpeed(int vehicle) {
+		return this.speed[vehicle];
+	}
+
+	public DistanceMatrix getDistanceMatrix() {
+		return this.distanceMatrix;
+	}
+
+	public TimeModel getTimeModel() {
+		return this.timeModel;
+	}
+
+	/**
+	 * Sums the cost of a range of routes, splitting it between threads. With
+	 * an array of costs the routes of an individual in a population that
+	 * didn't change keep their stored cost and the cost of every route is
+	 * written to the array.
+	 */
+	private class RouteTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private final Individual individual;
+		private final int from;
+		private final int to;
+		private final long[] costs;
+
+		RouteTask(Individual individual, int from, int to, long[] costs) {
+			this.individual = individual;
+			this.from = from;
+			this.to = to;
+			this.costs = costs;
+		}
+
+		@Override
+		protected Long compute() {
+			if (this.to - this.from <= 4) {
+				// Find where the first route of the range starts
+				int k = 0;
+				for (int j = 0; j < this.from; j++) {
+					k += this.individual.getGene(n + j);
+				}
+				Population population = this.costs != null ? this.individual.getOwner() : null;
+				int row = population != null ? this.individual.getRow() : -1;
+				long cost = 0;
+				for (int j = this.from; j < this.to; j++) {
+					int count = this.individual.getGene(n + j);
+					long routeCost = population != null && !population.isRouteDirty(row, j) ? population.getRouteCost(row, j)
+							: routeCost(this.individual, k, count, j, this.individual.getGene(n + m + j), null);
+					if (this.costs != null) {
+						this.costs[j] = routeCost;
+					}
+					cost += routeCost;
+					k += count;
+				}
+				return cost;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			RouteTask right = new RouteTask(this.individual, middle, this.to, this.costs);
+			right.fork();
+			long left = new RouteTask(this.individual, this.from, middle, this.costs).compute();
+			return left + right.join();
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package genetic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent repetitions of the algorithm at the same time and
+ * summarizes their results
+ *
+ * Each repetition gets its own seed, derived from a root seed, and is run by
+ * the given function. Repetitions run concurrently, as many as there are
+ * cores and fit in memory. Results are written in the same CSV format as the
+ * resultados-genetico files, and can be compared against one of them.
+ *
+ * @author ms
+ *
+ */
+public class ExperimentRunner {
+	/**
+	 * Columns of the CSV files
+	 */
+	public static final String HEADER = "costos,tiempos,penalidades,costos-horas-extra,costos-distancia";
+	private static final String COLUMNS[] = HEADER.split(",");
+
+	/**
+	 * Runs a single repetition
+	 */
+	public interface Repetition {
+		/**
+		 * @param seed
+		 *            Seed of the repetition
+		 * @return result
+		 */
+		Result run(long seed);
+	}
+
+	/**
+	 * Result of a repetition, a line of the CSV file
+	 */
+	public static class Result {
+		private final double cost;
+		private final long time;
+		private final double penaltyCost;
+		private final double overtimeCost;
+		private final double distanceCost;
+
+		/**
+		 * @param cost
+		 * @param time
+		 *            Milliseconds taken by the repetition
+		 * @param penaltyCost
+		 * @param overtimeCost
+		 * @param distanceCost
+		 */
+		public Result(double cost, long time, double penaltyCost, double overtimeCost, double distanceCost) {
+			this.cost = cost;
+			this.time = time;
+			this.penaltyCost = penaltyCost;
+			this.overtimeCost = overtimeCost;
+			this.distanceCost = distanceCost;
+		}
+
+		/**
+		 * Get the value of a column
+		 *
+		 * @param column
+		 *            Position in HEADER
+		 * @return value
+		 */
+		public double get(int column) {
+			switch (column) {
+			case 0:
+				return this.cost;
+			case 1:
+				return this.time;
+			case 2:
+				return this.penaltyCost;
+			case 3:
+				return this.overtimeCost;
+			default:
+				return this.distanceCost;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.cost + "," + this.time + "," + this.penaltyCost + "," + this.overtimeCost + ","
+					+ this.distanceCost;
+		}
+	}
+
+	private int repetitions;
+	private long rootSeed;
+	private int concurrency;
+
+	/**
+	 * Initialize runner, running as many repetitions at once as there are
+	 * cores and as fit in memory
+	 *
+	 * @param repetitions
+	 *            Number of repetitions
+	 * @param rootSeed
+	 *            Seed the seed of every repetition is derived from
+	 * @param memoryPerRepetition
+	 *            Estimated bytes used by a repetition
+	 */
+	public ExperimentRunner(int repetitions, long rootSeed, long memoryPerRepetition) {
+		this.repetitions = repetitions;
+		this.rootSeed = rootSeed;
+		long byMemory = Runtime.getRuntime().maxMemory() / Math.max(1, memoryPerRepetition);
+		this.concurrency = (int) Math.max(1,
+				Math.min(repetitions, Math.min(Runtime.getRuntime().availableProcessors(), byMemory)));
+	}
+
+	/**
+	 * Set the number of repetitions run at once
+	 *
+	 * @param concurrency
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	/**
+	 * Seed of a repetition, consecutive repetitions get unrelated seeds
+	 *
+	 * @param repetition
+	 * @return seed
+	 */
+	public long seed(int repetition) {
+		return RandomStreams.mix(this.rootSeed, repetition);
+	}
+
+	/**
+	 * Run every repetition
+	 *
+	 * @param repetition
+	 *            Function running a repetition, called from several threads
+	 * @return results In the order of the repetitions
+	 */
+	public List<Result> run(Repetition repetition) {
+		ExecutorService executor = Executors.newFixedThreadPool(this.concurrency);
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < this.repetitions; i++) {
+				final long seed = this.seed(i);
+				futures.add(executor.submit(() -> repetition.run(seed)));
+			}
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running the experiment", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A repetition failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write results as CSV
+	 *
+	 * @param path
+	 * @param results
+	 * @throws IOException
+	 */
+	public static void write(Path path, List<Result> results) throws IOException {
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+			writer.println(HEADER);
+			for (Result result : results) {
+				writer.println(result);
+			}
+		}
+	}
+
+	/**
+	 * Read the columns of a results CSV
+	 *
+	 * @param path
+	 * @return values[column][repetition], in the order of HEADER
+	 * @throws IOException
+	 *             If the file can't be read or doesn't have the columns
+	 */
+	public static double[][] read(Path path) throws IOException {
+		List<double[]> rows = new ArrayList<>();
+		int positions[] = new int[COLUMNS.length];
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null) {
+				throw new IOException("Empty results file: " + path);
+			}
+			List<String> names = List.of(header.trim().split(","));
+			for (int c = 0; c < COLUMNS.length; c++) {
+				positions[c] = names.indexOf(COLUMNS[c]);
+				if (positions[c] < 0) {
+					throw new IOException("Column " + COLUMNS[c] + " not found in " + path);
+				}
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				String fields[] = line.trim().split(",");
+				double row[] = new double[COLUMNS.length];
+				for (int c = 0; c < COLUMNS.length; c++) {
+					row[c] = Double.parseDouble(fields[positions[c]]);
+				}
+				rows.add(row);
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Invalid results file: " + path, e);
+		}
+
+		double columns[][] = new double[COLUMNS.length][rows.size()];
+		for (int r = 0; r < rows.size(); r++) {
+			for (int c = 0; c < COLUMNS.length; c++) {
+				columns[c][r] = rows.get(r)[c];
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Get the columns of some results
+	 *
+	 * @param results
+	 * @return values[column][repetition], in the order of HEADER
+	 */
+	public static double[][] columns(List<Result> results) {
+		double columns[][] = new double[COLUMNS.length][results.size()];
+		for (int r = 0; r < results.size(); r++) {
+			for (int c = 0; c < COLUMNS.length; c++) {
+				columns[c][r] = results.get(r).get(c);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Print mean, median and 95% confidence interval of every column and, if a
+	 * baseline is given, the same for the baseline with the Mann-Whitney test
+	 * between both
+	 *
+	 * @param out
+	 * @param results
+	 * @param baseline
+	 *            Columns read from a baseline CSV, may be null
+	 */
+	public static void printSummary(PrintStream out, List<Result> results, double[][] baseline) {
+		double columns[][] = columns(results);
+		for (int c = 0; c < COLUMNS.length; c++) {
+			out.println(COLUMNS[c] + ": " + summary(columns[c]));
+			if (baseline != null && baseline[c].length > 0 && columns[c].length > 0) {
+				double test[] = Statistics.mannWhitney(columns[c], baseline[c]);
+				double difference = Statistics.mean(columns[c]) - Statistics.mean(baseline[c]);
+				out.println("  baseline: " + summary(baseline[c]));
+				out.println(String.format(Locale.ROOT, "  difference of means %.2f (%+.2f%%), Mann-Whitney U %.1f p %.4f",
+						difference, 100 * difference / Statistics.mean(baseline[c]), test[0], test[1]));
+			}
+		}
+	}
+
+	private static String summary(double[] values) {
+		if (values.length == 0) {
+			return "no values";
+		}
+		return String.format(Locale.ROOT, "n %d mean %.2f median %.2f 95%% CI [%.2f, %.2f]", values.length,
+				Statistics.mean(values), Statistics.median(values),
+				Statistics.mean(values) - Statistics.confidenceInterval95(values),
+				Statistics.mean(values) + Statistics.confidenceInterval95(values));
+	}
+}
@@ -0,0 +1,192 @@
+package genetic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of individuals' costs keyed by a hash of their chromosome
+ *
+ * Once the population converges many individuals are identical (elites and
+ * parents that pass without crossover), the cache returns their cost without
+ * evaluating them again. Entries keep a copy of the chromosome so a hash
+ * collision is detected and treated as a miss.
+ *
+ * The cache is split in segments, each one with its own lock and a bounded
+ * least recently used eviction, so it can be shared by the evaluation
+ * threads.
+ *
+ * @author ms
+ *
+ */
+public class FitnessCache {
+	private static final int SEGMENTS = 16;
+
+	private Segment segments[];
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+
+	/**
+	 * Initialize cache
+	 *
+	 * @param capacity
+	 *            Maximum number of chromosomes kept
+	 */
+	public FitnessCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			// Spread the capacity between segments
+			this.segments[i] = new Segment(Math.max(1, (capacity + SEGMENTS - 1 - i) / SEGMENTS));
+		}
+	}
+
+	/**
+	 * Get the cost of an individual, evaluating it only if it's not cached
+	 *
+	 * @param individual
+	 *            The individual to evaluate
+	 * @param evaluator
+	 *            The evaluation kernel used on a miss
+	 * @return cost The individual's cost in fixed-point
+	 */
+	public long getCost(Individual individual, Evaluator evaluator) {
+		long hash = hash(individual);
+		Segment segment = this.segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(hash);
+		}
+		if (entry != null && entry.matches(individual)) {
+			this.hits.increment();
+			return entry.cost;
+		}
+
+		this.misses.increment();
+		long cost = evaluator.evaluate(individual);
+		// Keep a copy of the genes to verify later hits
+		int genes[] = new int[individual.getChromosomeLength()];
+		for (int i = 0; i < genes.length; i++) {
+			genes[i] = individual.getGene(i);
+		}
+		Entry added = new Entry(genes, cost);
+		synchronized (segment) {
+			segment.put(hash, added);
+		}
+		return cost;
+	}
+
+	/**
+	 * 64 bit hash of a chromosome
+	 *
+	 * Each gene is mixed with a multiply-rotate step and the result goes
+	 * through MurmurHash3's finalizer so every bit depends on every gene.
+	 *
+	 * @param individual
+	 * @return hash
+	 */
+	public static long hash(Individual individual) {
+		int length = individual.getChromosomeLength();
+		long h = 0x9E3779B97F4A7C15L ^ length;
+		for (int i = 0; i < length; i++) {
+			h = Long.rotateLeft(h ^ (individual.getGene(i) * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Get number of lookups answered from the cache
+	 *
+	 * @return hits
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Get number of lookups that needed an evaluation
+	 *
+	 * @return misses
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Get fraction of lookups answered from the cache
+	 *
+	 * @return hit rate between 0 and 1
+	 */
+	public double getHitRate() {
+		long hits = this.getHits();
+		long total = hits + this.getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Get number of chromosomes currently cached
+	 *
+	 * @return size
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Cached chromosome with its cost
+	 */
+	private static class Entry {
+		private final int genes[];
+		private final long cost;
+
+		Entry(int[] genes, long cost) {
+			this.genes = genes;
+			this.cost = cost;
+		}
+
+		boolean matches(Individual individual) {
+			if (individual.getChromosomeLength() != this.genes.length) {
+				return false;
+			}
+			for (int i = 0; i < this.genes.length; i++) {
+				if (this.genes[i] != individual.getGene(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Part of the cache, a map in access order that drops its least recently
+	 * used entry when full
+	 */
+	private static class Segment extends LinkedHashMap<Long, Entry> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+			return this.size() > this.capacity;
+		}
+	}
+}
@@ -1,14 +1,10 @@
 package genetic;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import model.Product;
-import model.TimeRange;
 import model.Vehicle;
 import model.Worker;
 
@@ -20,6 +16,30 @@ public class GeneticAlgorithm {
   private int elitismCount;
   protected int tournamentSize;
 
+  // Degree of parallelism used to evaluate the population, 1 means serial
+  private int parallelism = 1;
+  private ForkJoinPool pool;
+
+  // Optional cache of costs by chromosome
+  private FitnessCache fitnessCache;
+
+  // Generator owned by the algorithm, the initial population is drawn from streams seeded by it
+  private Xoshiro256 random = new Xoshiro256(RandomStreams.entropy());
+
+  // Optional record of the time spent in each phase of every generation
+  private Telemetry telemetry;
+
+  // Optional memetic steps applied to the fittest individuals after each evaluation
+  private LocalSearch localSearch;
+  private InterRouteSearch interRouteSearch;
+
+  // Optional heuristics building part of the initial population
+  private Seeder seeder;
+
+  // Tournament selectors and crossovers keep buffers, one per thread
+  private final ThreadLocal<TournamentSelector> selectors;
+  private final ThreadLocal<OrderedCrossover> crossovers = ThreadLocal.withInitial(OrderedCrossover::new);
+
   public GeneticAlgorithm(int populationSize, double mutationRate, double crossoverRate, int elitismCount,
       int tournamentSize) {
 
@@ -28,6 +48,147 @@ public class GeneticAlgorithm {
     this.crossoverRate = crossoverRate;
     this.elitismCount = elitismCount;
     this.tournamentSize = tournamentSize;
+    this.selectors = ThreadLocal.withInitial(() -> new TournamentSelector(tournamentSize));
+  }
+
+  /**
+   * Set the number of threads used to evaluate the population
+   * 
+   * With a value greater than 1 individuals are evaluated on a work-stealing
+   * pool. If the population has less individuals than threads, each
+   * individual's routes are evaluated in parallel instead. Fitness values are
+   * the same as in the serial evaluation.
+   * 
+   * @param parallelism Number of threads, 1 to evaluate serially
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    if (this.pool != null && this.pool.getParallelism() != parallelism) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+    this.parallelism = parallelism;
+    if (parallelism > 1 && this.pool == null) {
+      this.pool = new ForkJoinPool(parallelism);
+    }
+  }
+
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Set a cache of costs by chromosome, identical individuals are then only
+   * evaluated once. When set, individuals are always evaluated as a whole
+   * even if there are less individuals than threads.
+   * 
+   * @param fitnessCache The cache to use, null to evaluate every individual
+   */
+  public void setFitnessCache(FitnessCache fitnessCache) {
+    this.fitnessCache = fitnessCache;
+  }
+
+  public FitnessCache getFitnessCache() {
+    return this.fitnessCache;
+  }
+
+  /**
+   * Set the generator used by selection, crossover and mutation. With a
+   * seeded generator runs can be repeated, and a run continued from a
+   * checkpoint draws the same numbers it would have drawn without stopping.
+   * Without one the algorithm draws from a generator with an unrepeatable
+   * seed.
+   * 
+   * @param random The generator to use, null for one with an unrepeatable seed
+   */
+  public void setRandom(Xoshiro256 random) {
+    this.random = random != null ? random : new Xoshiro256(RandomStreams.entropy());
+  }
+
+  public Xoshiro256 getRandom() {
+    return this.random;
+  }
+
+  /**
+   * Record phase times, throughput, allocations and costs of every generation.
+   * The phases must run on the thread that checks the termination condition.
+   * 
+   * @param telemetry the telemetry to report to, null to stop reporting
+   */
+  public void setTelemetry(Telemetry telemetry) {
+    this.telemetry = telemetry;
+  }
+
+  public Telemetry getTelemetry() {
+    return this.telemetry;
+  }
+
+  /**
+   * Improve the routes of the fittest individuals after every evaluation of
+   * the population
+   * 
+   * @param localSearch the local search to apply, null to not apply any
+   */
+  public void setLocalSearch(LocalSearch localSearch) {
+    this.localSearch = localSearch;
+  }
+
+  public LocalSearch getLocalSearch() {
+    return this.localSearch;
+  }
+
+  /**
+   * Move destinations between the routes of the elite individuals after every
+   * evaluation of the population, before the local search
+   * 
+   * @param interRouteSearch the search to apply, null to not apply any
+   */
+  public void setInterRouteSearch(InterRouteSearch interRouteSearch) {
+    this.interRouteSearch = interRouteSearch;
+  }
+
+  public InterRouteSearch getInterRouteSearch() {
+    return this.interRouteSearch;
+  }
+
+  /**
+   * Build a fraction of the initial population with constructive heuristics
+   * instead of random permutations
+   * 
+   * @param seeder the heuristics, null to build every individual at random
+   */
+  public void setSeeder(Seeder seeder) {
+    this.seeder = seeder;
+  }
+
+  public Seeder getSeeder() {
+    return this.seeder;
+  }
+
+  public int getPopulationSize() {
+    return this.populationSize;
+  }
+
+  public double getMutationRate() {
+    return this.mutationRate;
+  }
+
+  public double getCrossoverRate() {
+    return this.crossoverRate;
+  }
+
+  public int getElitismCount() {
+    return this.elitismCount;
+  }
+
+  public int getTournamentSize() {
+    return this.tournamentSize;
+  }
+
+  private Random random() {
+    return this.random;
   }
 
   /**
@@ -42,7 +203,13 @@ public class GeneticAlgorithm {
   public Population initPopulation(int numDestinations, int numVehicles, ArrayList<Vehicle> vehicles,
       ArrayList<Worker> workers) {
     // Initialize population
-    Population population = new Population(this.populationSize, numDestinations, numVehicles, vehicles, workers);
+    // Random individuals and seeded ones from their own streams
+    RandomStreams streams = new RandomStreams(this.random().nextLong());
+    Population population = new Population(this.populationSize, numDestinations, numVehicles, vehicles, workers,
+        streams.derive(0));
+    if (this.seeder != null) {
+      this.seeder.seed(population, streams.derive(1), this.parallelism > 1 ? this.pool : null);
+    }
     return population;
   }
 
@@ -59,27 +226,43 @@ public class GeneticAlgorithm {
     return (generationsCount > maxGenerations);
   }
 
+  /**
+   * Check if population has met any of several termination criteria, see
+   * TerminationCriteria. The criterion met is kept by the criteria.
+   * 
+   * @param generationsCount Number of generations passed
+   * @param population       The current evaluated population
+   * @param criteria         The criteria to check
+   * @return boolean True if termination condition met, otherwise, false
+   */
+  public boolean isTerminationConditionMet(int generationsCount, Population population,
+      TerminationCriteria criteria) {
+    if (this.telemetry != null) {
+      // Rank here to time it, the criteria and the next crossover reuse the ranking
+      long start = System.nanoTime();
+      population.getFittest(0);
+      this.telemetry.record(Telemetry.Phase.RANKING, System.nanoTime() - start);
+      this.telemetry.endGeneration(generationsCount, population);
+    }
+    return criteria.isMet(generationsCount, population);
+  }
+
   /**
    * Calculate individual's fitness value
    * 
    * Fitness, in this problem, is inversely proportional to the route's total
-   * distance. The total distance is calculated by the Route class.
+   * cost. The cost is calculated by the Evaluator directly over the
+   * chromosome, the same as Routes would.
    * 
    * @param individual the individual to evaluate
-   * @param products   the destinations being referenced
-   * @param vehicles   the vehicles being referenced
-   * @param depot      the depot (only for its coordinates)
+   * @param evaluator  the evaluation kernel of the problem
    * @return double The fitness value for individual
    */
-  public double calcFitness(Individual individual, ArrayList<Product> products, ArrayList<Vehicle> vehicles,
-      ArrayList<Worker> workers, Product depot, TimeRange shift, TimeRange breakRange, LocalDateTime curTime,
-      int overtimeBike, int overtimeCar, int lateDeliveryPenalty) {
-    // Get fitness
-
-    Routes routes = new Routes(individual, products, vehicles, workers, depot, shift, breakRange, curTime, overtimeBike,
-        overtimeCar, lateDeliveryPenalty);
-
-    double fitness = 1 / routes.getCost();
+  public double calcFitness(Individual individual, Evaluator evaluator) {
+    // Get fitness, from the cache if the same chromosome was seen before
+    long cost = this.fitnessCache != null ? this.fitnessCache.getCost(individual, evaluator)
+        : evaluator.evaluate(individual);
+    double fitness = Evaluator.toFitness(cost);
 
     // Store fitness
     individual.setFitness(fitness);
@@ -91,60 +274,111 @@ public class GeneticAlgorithm {
    * Evaluate population -- basically run calcFitness on each individual.
    * 
    * @param population the population to evaluate
-   * @param products   the products being referenced
-   * @param vehicles   the vehicles being referenced
-   * @param depot      the point of origin for each route
+   * @param evaluator  the evaluation kernel of the problem
    * 
    */
-  public void evalPopulation(Population population, ArrayList<Product> products, ArrayList<Vehicle> vehicles,
-      ArrayList<Worker> workers, Product depot, TimeRange shift, TimeRange breakRange, LocalDateTime curTime,
-      int overtimeBike, int overtimeCar, int lateDeliveryPenalty) {
+  public void evalPopulation(Population population, Evaluator evaluator) {
+    long start = System.nanoTime();
     double populationFitness = 0;
 
-    // Loop over population evaluating individuals and summing population fitness
+    if (this.parallelism > 1 && population.size() >= this.parallelism) {
+      // Split the population between threads
+      this.pool.invoke(new EvaluationTask(population.getIndividuals(), 0, population.size(), evaluator));
 
-    // Linear
-    for (Individual individual : population.getIndividuals()) {
-      populationFitness += this.calcFitness(individual, products, vehicles, workers, depot, shift, breakRange, curTime,
-          overtimeBike, overtimeCar, lateDeliveryPenalty);
+      // Sum in population order so the result matches the serial evaluation
+      for (Individual individual : population.getIndividuals()) {
+        populationFitness += individual.getFitness();
+      }
+    } else if (this.parallelism > 1 && this.fitnessCache == null) {
+      // Few individuals, split each individual's changed routes between threads
+      for (Individual individual : population.getIndividuals()) {
+        double fitness = Evaluator.toFitness(evaluator.evaluate(individual, this.pool));
+        individual.setFitness(fitness);
+        populationFitness += fitness;
+      }
+    } else {
+      // Linear
+      for (Individual individual : population.getIndividuals()) {
+        populationFitness += this.calcFitness(individual, evaluator);
+      }
     }
 
-    // Threads
-    // ExecutorService threadPool = Executors.newFixedThreadPool(population.size());
-    // for(int i = 0; i < population.size(); i++){
-    // threadPool.submit(new Runnable (){
-    // public void run() {
-    // calcFitness(population.getIndividual(i), products, vehicles, depot);
-    // }
-    // });
-    // }
+    if (this.telemetry != null) {
+      this.telemetry.recordEvaluation(System.nanoTime() - start, population.size());
+    }
+
+    if (this.localSearch != null || this.interRouteSearch != null) {
+      // Improve the fittest individuals, their fitness changes
+      start = System.nanoTime();
+      if (this.interRouteSearch != null) {
+        this.interRouteSearch.improve(population, this.elitismCount);
+      }
+      if (this.localSearch != null) {
+        this.localSearch.improve(population, this.parallelism > 1 ? this.pool : null);
+      }
+      populationFitness = 0;
+      for (Individual individual : population.getIndividuals()) {
+        populationFitness += individual.getFitness();
+      }
+      if (this.telemetry != null) {
+        this.telemetry.record(Telemetry.Phase.LOCAL_SEARCH, System.nanoTime() - start);
+      }
+    }
 
     double avgFitness = populationFitness / population.size();
     population.setPopulationFitness(avgFitness);
   }
 
+  /**
+   * Evaluates a range of the population, splitting it in halves until it's
+   * small enough to be evaluated by a single thread
+   */
+  private class EvaluationTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 8;
+
+    private final Individual[] individuals;
+    private final int from;
+    private final int to;
+    private final Evaluator evaluator;
+
+    EvaluationTask(Individual[] individuals, int from, int to, Evaluator evaluator) {
+      this.individuals = individuals;
+      this.from = from;
+      this.to = to;
+      this.evaluator = evaluator;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= THRESHOLD) {
+        for (int i = this.from; i < this.to; i++) {
+          calcFitness(this.individuals[i], this.evaluator);
+        }
+        return;
+      }
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new EvaluationTask(this.individuals, this.from, middle, this.evaluator),
+          new EvaluationTask(this.individuals, middle, this.to, this.evaluator));
+    }
+  }
+
   /**
    * Selects parent for crossover using tournament selection
    * 
    * Tournament selection was introduced in Chapter 3
    * 
+   * Each thread uses its own selector, every one draws from the algorithm's
+   * generator, so it must be called from one thread at a time.
+   * 
    * @param population
    * 
    * @return The individual selected as a parent
    */
   public Individual selectParent(Population population) {
-    // Create tournament
-    Population tournament = new Population(this.tournamentSize);
-
-    // Add random individuals to the tournament
-    population.shuffle();
-    for (int i = 0; i < this.tournamentSize; i++) {
-      Individual tournamentIndividual = population.getIndividual(i);
-      tournament.setIndividual(i, tournamentIndividual);
-    }
-
-    // Return the best
-    return tournament.getFittest(0);
+    // Sample the tournament and return the best, population is not modified
+    int row = this.selectors.get().select(population, this.random());
+    return population.getRow(row);
   }
 
   /**
@@ -163,6 +397,7 @@ public class GeneticAlgorithm {
    * @return The new population
    */
   public Population crossoverPopulation(Population population, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers) {
+    long start = System.nanoTime();
     int n = population.getNumDestinations();
     int m = population.getNumVehicles();
 
@@ -173,9 +408,8 @@ public class GeneticAlgorithm {
     separationPoint++;
 
     // Create new population
-    Population newPopulation = new Population(population.size());
-    newPopulation.setNumDestinations(n);
-    newPopulation.setNumVehicles(m);
+    Population newPopulation = new Population(population.size(), n, m);
+    OrderedCrossover crossover = this.crossovers.get();
 
     // Loop over current population by fitness
     for (int populationIndex = 0; populationIndex < population.size(); populationIndex++) {
@@ -183,21 +417,20 @@ public class GeneticAlgorithm {
       Individual parent1 = population.getFittest(populationIndex);
 
       // Apply crossover to this individual?
-      if (this.crossoverRate > Math.random() && populationIndex >= this.elitismCount) {
+      if (this.crossoverRate > this.random().nextDouble() && populationIndex >= this.elitismCount) {
         // Find parent2 with tournament selection
         Individual parent2 = this.selectParent(population);
 
-        // Create blank offspring chromosome
-        int offspringChromosome[] = new int[n + m + m];
-        Arrays.fill(offspringChromosome, -1);
+        // Create blank offspring chromosome in its place of the new population
+        Individual offspring = newPopulation.getIndividual(populationIndex);
+        offspring.fillGenes(-1);
 
         /**
          * First part of the chromosome using ordered crossover
          */
-        Individual offspring = new Individual(offspringChromosome);
 
         // Get subset of parent chromosomes
-        Random r = new Random();
+        Random r = this.random();
         int substrPos1 = r.nextInt(n - 0 + 1) + 0;
         int substrPos2 = r.nextInt(n - 0 + 1) + 0;
 
@@ -205,30 +438,8 @@ public class GeneticAlgorithm {
         final int startSubstr = Math.min(substrPos1, substrPos2);
         final int endSubstr = Math.max(substrPos1, substrPos2);
 
-        // Loop and add the sub tour from parent1 to our child
-        for (int i = startSubstr; i < endSubstr; i++) {
-          offspring.setGene(i, parent1.getGene(i));
-        }
-
-        // Loop through parent2's city tour
-        for (int i = 0; i < n; i++) {
-          int parent2Gene = i + endSubstr;
-          if (parent2Gene >= n) {
-            parent2Gene -= n;
-          }
-
-          // If offspring doesn't have the city add it
-          if (offspring.containsDestination(parent2.getGene(parent2Gene), n) == false) {
-            // Loop to find a spare position in the child's tour
-            for (int ii = 0; ii < n; ii++) {
-              // Spare position found, add city
-              if (offspring.getGene(ii) == -1) {
-                offspring.setGene(ii, parent2.getGene(parent2Gene));
-                break;
-              }
-            }
-          }
-        }
+        // Keep parent1's sub tour and fill the rest in parent2's order
+        crossover.crossDestinations(parent1, parent2, offspring, n, startSubstr, endSubstr);
 
         /**
          * Second part of the chromosome using single point asexual crossover for each
@@ -237,7 +448,7 @@ public class GeneticAlgorithm {
          * First find the point where there's the change of vehicle type
          */
 
-        int crossPoint = (int) Math.random() * separationPoint;
+        int crossPoint = (int) r.nextDouble() * separationPoint;
 
         for (int i = n, j = crossPoint; i < crossPoint; i++, j++) {
           offspring.setGene(i, parent1.getGene(j));
@@ -248,7 +459,7 @@ public class GeneticAlgorithm {
         }
 
         if (separationPoint < size) {
-          crossPoint = (int) Math.random() * (m - separationPoint);
+          crossPoint = (int) r.nextDouble() * (m - separationPoint);
 
           for (int i = n + separationPoint - 1, j = crossPoint; i < crossPoint; i++, j++) {
             offspring.setGene(i, parent1.getGene(j));
@@ -271,36 +482,20 @@ public class GeneticAlgorithm {
         final int startSubstr2 = Math.min(substrPosA, substrPosB);
         final int endSubstr2 = Math.max(substrPosA, substrPosB);
 
-        // Loop and add the sub tour from parent1 to our child
-        for (int i = startSubstr2; i < endSubstr2; i++) {
-          offspring.setGene(i, parent1.getGene(i));
-        }
+        // Keep parent1's workers and fill the rest in parent2's order
+        crossover.crossWorkers(parent1, parent2, offspring, n, m, startSubstr2, endSubstr2);
 
-        // Loop through parent2's workers
-        for (int i = n+m; i < n+m+m; i++) {
-          int parent2Gene = i;
-
-          // If offspring doesn't have the worker add it
-          if (offspring.containsWorker(parent2.getGene(parent2Gene), n, m) == false) {
-            // Loop to find a spare position in the child's tour
-            for (int ii = n+m; ii < n+m+m; ii++) {
-              // Spare position found, add city
-              if (offspring.getGene(ii) == -1) {
-                offspring.setGene(ii, parent2.getGene(parent2Gene));
-                break;
-              }
-            }
-          }
-        }
-
-        // Add child
-        newPopulation.setIndividual(populationIndex, offspring);
+        // Routes equal to parent1's keep their cost
+        newPopulation.inheritRouteCosts(offspring.getRow(), parent1);
       } else {
         // Add individual to new population without applying crossover
         newPopulation.setIndividual(populationIndex, parent1);
       }
     }
 
+    if (this.telemetry != null) {
+      this.telemetry.record(Telemetry.Phase.CROSSOVER, System.nanoTime() - start);
+    }
     return newPopulation;
   }
 
@@ -311,24 +506,32 @@ public class GeneticAlgorithm {
    * form of mutation will randomly swap two genes instead of bit-flipping a gene
    * like in earlier examples.
    * 
+   * The population is mutated in place, its genes are modified and every
+   * fitness is reset so it has to be evaluated again.
+   * 
    * @param population The population to apply mutation to
    * @return The mutated population
    */
   public Population mutatePopulation(Population population, int numProducts, int numVehicles) {
-    // Initialize new population
-    Population newPopulation = new Population(this.populationSize);
-    newPopulation.setNumDestinations(numProducts);
-    newPopulation.setNumVehicles(numVehicles);
-
+    long start = System.nanoTime();
     int n = population.getNumDestinations();
     int m = population.getNumVehicles();
 
-    // Loop over current population by fitness
-    for (int populationIndex = 0; populationIndex < population.size(); populationIndex++) {
-      Individual individual = population.getFittest(populationIndex);
+    // Find the elite individuals without ranking the whole population
+    int elites[] = new int[this.elitismCount];
+    int eliteCount = population.getFittestRows(this.elitismCount, elites);
+
+    // Position where each route starts, filled once an individual is mutated
+    int routeStarts[] = new int[m + 1];
+    Random random = this.random();
+
+    // Loop over current population
+    for (int row = 0; row < population.size(); row++) {
+      Individual individual = population.getRow(row);
 
       // Skip mutation if this is an elite individual
-      if (populationIndex >= this.elitismCount) {
+      if (!isElite(row, elites, eliteCount)) {
+        boolean routesFound = false;
 
         /**
          * Apply mutation to first part of the chromosome
@@ -338,15 +541,21 @@ public class GeneticAlgorithm {
         for (int geneIndex = 0; geneIndex < n; geneIndex++) {
 
           // Does this gene need mutation?
-          if (this.mutationRate > Math.random()) {
+          if (this.mutationRate > random.nextDouble()) {
             // Get new gene position
-            int newGenePos = (int) (Math.random() * n);
-            // Get genes to swap
-            int gene1 = individual.getGene(newGenePos);
-            int gene2 = individual.getGene(geneIndex);
+            int newGenePos = (int) (random.nextDouble() * n);
             // Swap genes
-            individual.setGene(geneIndex, gene1);
-            individual.setGene(newGenePos, gene2);
+            individual.swapGenes(geneIndex, newGenePos);
+
+            // Only the routes holding the swapped genes change their cost
+            if (!routesFound) {
+              for (int j = 0; j < m; j++) {
+                routeStarts[j + 1] = routeStarts[j] + individual.getGene(n + j);
+              }
+              routesFound = true;
+            }
+            markRouteDirty(population, row, routeStarts, geneIndex);
+            markRouteDirty(population, row, routeStarts, newGenePos);
           }
         }
 
@@ -369,13 +578,55 @@ public class GeneticAlgorithm {
         //   }
         // }
       }
+    }
+
+    // Genes changed, fitness values are no longer valid
+    population.resetFitness();
 
-      // Add individual to population
-      newPopulation.setIndividual(populationIndex, individual);
+    if (this.telemetry != null) {
+      this.telemetry.record(Telemetry.Phase.MUTATION, System.nanoTime() - start);
     }
 
     // Return mutated population
-    return newPopulation;
+    return population;
+  }
+
+  /**
+   * Mark the route holding a destination gene to be evaluated again
+   * 
+   * @param population
+   * @param row The row of the mutated individual
+   * @param routeStarts Position where each route starts, followed by the end
+   *          of the last route
+   * @param position Position of the changed gene in the chromosome
+   */
+  private static void markRouteDirty(Population population, int row, int[] routeStarts, int position) {
+    int m = routeStarts.length - 1;
+    if (position >= routeStarts[m]) {
+      // Not visited by any vehicle
+      return;
+    }
+    // Last route starting at or before the position, empty routes are skipped
+    int low = 0;
+    int high = m - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (routeStarts[middle] <= position) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    population.markRouteDirty(row, low);
+  }
+
+  private static boolean isElite(int row, int[] elites, int eliteCount) {
+    for (int i = 0; i < eliteCount; i++) {
+      if (elites[i] == row) {
+        return true;
+      }
+    }
+    return false;
   }
 
 }
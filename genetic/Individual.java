@@ -1,6 +1,7 @@
 package genetic;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -22,7 +23,15 @@ public class Individual {
 	 * 
 	 */
 	private int[] chromosome;
-	private double fitness = -1;
+	// Position of the first gene and number of genes inside chromosome
+	private int offset;
+	private int length;
+
+	// Fitness is kept at fitnessIndex so a population can store it in its own array
+	private double[] fitness;
+	private int fitnessIndex;
+	// Population storing this individual, told when its fitness changes
+	private Population owner;
 
 	/**
 	 * Initializes individual with specific chromosome
@@ -33,6 +42,36 @@ public class Individual {
 	public Individual(int[] chromosome) {
 		// Create individualchromosome
 		this.chromosome = chromosome.clone();
+		this.offset = 0;
+		this.length = chromosome.length;
+		this.fitness = new double[] { -1 };
+		this.fitnessIndex = 0;
+	}
+
+	/**
+	 * Initializes individual as a view of a population's storage, its genes
+	 * and fitness are read and written directly in the given arrays
+	 * 
+	 * @param genes
+	 *            Array holding the genes of every individual in the population
+	 * @param offset
+	 *            Position of this individual's first gene
+	 * @param length
+	 *            The chromosome length
+	 * @param fitness
+	 *            Array holding the fitness of every individual
+	 * @param fitnessIndex
+	 *            Position of this individual's fitness
+	 * @param owner
+	 *            The population the arrays belong to
+	 */
+	Individual(int[] genes, int offset, int length, double[] fitness, int fitnessIndex, Population owner) {
+		this.chromosome = genes;
+		this.offset = offset;
+		this.length = length;
+		this.fitness = fitness;
+		this.fitnessIndex = fitnessIndex;
+		this.owner = owner;
 	}
 
 	/**
@@ -48,6 +87,26 @@ public class Individual {
 	 * 						Array of workers associated with individual
 	 */
 	public Individual(int numDestinations, int numVehicles, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers) {
+		this(numDestinations, numVehicles, vehicles, workers, new Xoshiro256(RandomStreams.entropy()));
+	}
+
+	/**
+	 * Initializes random individual drawing from a generator, the same
+	 * individual for the same generator state
+	 * 
+	 * @param numDestinations
+	 *            The number of destinations
+	 * @param numVehicles
+	 * 						The number of vehicles
+	 * @param vehicles
+	 * 						Array of vehicles associated with individual
+	 * @param workers
+	 * 						Array of workers associated with individual
+	 * @param random
+	 * 						Generator of the individual
+	 */
+	public Individual(int numDestinations, int numVehicles, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+			Random random) {
 		// Create random individual
 		int[] individual;
 		individual = new int[numDestinations + numVehicles + numVehicles];
@@ -65,7 +124,7 @@ public class Individual {
 			destinations.add(i);
 		}
 		// shuffle to get a random order
-		java.util.Collections.shuffle(destinations);
+		java.util.Collections.shuffle(destinations, random);
 
 		// list to represent number of ordered destinations each vehicle will visit
 		List <Integer> vehicleToDestinations = new ArrayList<Integer>();
@@ -75,8 +134,7 @@ public class Individual {
 		// get a random set of numbers that sum up to the number of destinations
 		int randomVehicle;
 		for(int i=0; i < numDestinations; i++){
-			Random r = new Random();
-			randomVehicle = r.nextInt(numVehicles);
+			randomVehicle = random.nextInt(numVehicles);
 			while(true){
 				if(vehicleToDestinations.get(randomVehicle) == vehicles.get(randomVehicle).getCapacity()) {
 					if(randomVehicle == numVehicles-1)	randomVehicle = -1;
@@ -94,7 +152,7 @@ public class Individual {
 		for(int i = 0; i < workers.size(); i++){
 			workersIndex.add(i);
 		}
-		Collections.shuffle(workersIndex);
+		Collections.shuffle(workersIndex, random);
 		// shuffle and select a random set of workers, one for each vehicle
 		List<Integer> workerToVehicle = new ArrayList<Integer>();
 		for(int i =0 ; i < numVehicles; i++){
@@ -113,6 +171,10 @@ public class Individual {
 		}
 		
 		this.chromosome = individual;
+		this.offset = 0;
+		this.length = individual.length;
+		this.fitness = new double[] { -1 };
+		this.fitnessIndex = 0;
 		destinations.clear();
 		vehicleToDestinations.clear();
 		workersIndex.clear();
@@ -122,10 +184,16 @@ public class Individual {
 	/**
 	 * Gets individual's chromosome
 	 * 
+	 * Individuals stored in a population share a single array with the rest of
+	 * the population, for them a copy of the genes is returned
+	 * 
 	 * @return The individual's chromosome
 	 */
 	public int[] getChromosome() {
-		return this.chromosome;
+		if (this.offset == 0 && this.length == this.chromosome.length) {
+			return this.chromosome;
+		}
+		return Arrays.copyOfRange(this.chromosome, this.offset, this.offset + this.length);
 	}
 
 	/**
@@ -134,7 +202,68 @@ public class Individual {
 	 * @return The individual's chromosome length
 	 */
 	public int getChromosomeLength() {
-		return this.chromosome.length;
+		return this.length;
+	}
+
+	/**
+	 * Copies the genes of another individual of the same length into this one
+	 * 
+	 * @param individual
+	 */
+	public void copyGenes(Individual individual) {
+		System.arraycopy(individual.chromosome, individual.offset, this.chromosome, this.offset, this.length);
+		this.genesChanged();
+	}
+
+	/**
+	 * Set every gene to the same value
+	 * 
+	 * @param gene
+	 */
+	public void fillGenes(int gene) {
+		Arrays.fill(this.chromosome, this.offset, this.offset + this.length, gene);
+		this.genesChanged();
+	}
+
+	/**
+	 * Swap two genes without telling the population, the caller marks the
+	 * affected routes
+	 * 
+	 * @param i
+	 * @param j
+	 */
+	void swapGenes(int i, int j) {
+		int aux = this.chromosome[this.offset + i];
+		this.chromosome[this.offset + i] = this.chromosome[this.offset + j];
+		this.chromosome[this.offset + j] = aux;
+	}
+
+	/**
+	 * Write genes without telling the population, the caller updates the cost
+	 * of the routes they belong to
+	 * 
+	 * @param position
+	 *            Position of the first gene written
+	 * @param genes
+	 * @param count
+	 *            Number of genes written from the start of genes
+	 */
+	void writeGenes(int position, int[] genes, int count) {
+		System.arraycopy(genes, 0, this.chromosome, this.offset + position, count);
+	}
+
+	/**
+	 * Get the array holding the genes, shared with the population for
+	 * individuals stored in one
+	 * 
+	 * @return storage The genes start at getOffset()
+	 */
+	int[] getStorage() {
+		return this.chromosome;
+	}
+
+	int getOffset() {
+		return this.offset;
 	}
 
 	/**
@@ -144,7 +273,8 @@ public class Individual {
 	 * @param offset
 	 */
 	public void setGene(int offset, int gene) {
-		this.chromosome[offset] = gene;
+		this.chromosome[this.offset + offset] = gene;
+		this.genesChanged();
 	}
 
 	/**
@@ -154,7 +284,7 @@ public class Individual {
 	 * @return gene
 	 */
 	public int getGene(int offset) {
-		return this.chromosome[offset];
+		return this.chromosome[this.offset + offset];
 	}
 
 	/**
@@ -164,7 +294,10 @@ public class Individual {
 	 *            The individuals fitness
 	 */
 	public void setFitness(double fitness) {
-		this.fitness = fitness;
+		this.fitness[this.fitnessIndex] = fitness;
+		if (this.owner != null) {
+			this.owner.invalidateRanking();
+		}
 	}
 
 	/**
@@ -173,13 +306,41 @@ public class Individual {
 	 * @return The individual's fitness
 	 */
 	public double getFitness() {
-		return this.fitness;
+		return this.fitness[this.fitnessIndex];
+	}
+
+	/**
+	 * Get the population storing this individual
+	 * 
+	 * @return population, null if the individual has its own chromosome
+	 */
+	Population getOwner() {
+		return this.owner;
+	}
+
+	/**
+	 * Get the row of this individual in its population
+	 * 
+	 * @return row
+	 */
+	int getRow() {
+		return this.fitnessIndex;
+	}
+
+	/**
+	 * Without knowing which genes changed, every route of the individual has
+	 * to be evaluated again
+	 */
+	private void genesChanged() {
+		if (this.owner != null) {
+			this.owner.markAllRoutesDirty(this.fitnessIndex);
+		}
 	}
 	
 	public String toString() {
 		String output = "";
-		for (int gene = 0; gene < this.chromosome.length; gene++) {
-			output += this.chromosome[gene] + ",";
+		for (int gene = 0; gene < this.length; gene++) {
+			output += this.chromosome[this.offset + gene] + ",";
 		}
 		return output;
 	}
@@ -195,7 +356,7 @@ public class Individual {
 	 * @return
 	 */
 	public boolean containsDestination(int gene, int n) {
-		for (int i = 0; i < n; i++) {
+		for (int i = this.offset; i < this.offset + n; i++) {
 			if (this.chromosome[i] == gene) {
 				return true;
 			}
@@ -204,7 +365,7 @@ public class Individual {
 	}
 
 	public boolean containsWorker(int gene, int n, int m){
-		for (int i = n+m; i < n+m+m; i++) {
+		for (int i = this.offset+n+m; i < this.offset+n+m+m; i++) {
 			if (this.chromosome[i] == gene) {
 				return true;
 			}
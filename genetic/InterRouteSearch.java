@@ -0,0 +1,360 @@
+package genetic;
+
+import model.SpatialIndex;
+
+/**
+ * Local search moving destinations between routes: relocate a destination to
+ * another route, swap two destinations of different routes, and 2-opt*,
+ * exchanging the tails of two routes
+ *
+ * Moves are only tried between a destination and its k nearest neighbors,
+ * taken from a spatial index, so a pass over an individual looks at n * k
+ * pairs instead of every pair. Each move respects the capacity of the
+ * vehicles. Routes are open paths from the depot, their distance is kept with
+ * the distance up to every position, so the new distance of both routes of a
+ * move is found in constant time. Moves
+ * whose distance cost alone reaches the current cost of both routes are
+ * skipped, the rest are checked with the exact cost of both routes, deadline
+ * penalties and overtime included.
+ *
+ * The individual's routes are rebuilt in vehicle order, so the first and
+ * second part of the chromosome change together while each vehicle keeps its
+ * worker.
+ *
+ * @author ms
+ *
+ */
+public class InterRouteSearch {
+	// Passes over every destination, stops earlier when a pass finds nothing
+	private static final int MAX_PASSES = 10;
+
+	private Evaluator evaluator;
+	private DistanceMatrix distanceMatrix;
+	private int n;
+	private int m;
+	private int k;
+	private int capacity[];
+	private long costPerKm[];
+	// k nearest destinations of each destination, nearest first
+	private int neighbors[];
+
+	private final ThreadLocal<Workspace> workspaces;
+
+	/**
+	 * Initialize search, the neighbor lists are calculated once
+	 *
+	 * @param evaluator
+	 *            The evaluation kernel of the problem
+	 * @param index
+	 *            Spatial index over the destinations, in chromosome order
+	 * @param k
+	 *            Number of nearest neighbors of each destination tried
+	 */
+	public InterRouteSearch(Evaluator evaluator, SpatialIndex index, int k) {
+		this.evaluator = evaluator;
+		this.distanceMatrix = evaluator.getDistanceMatrix();
+		this.n = evaluator.getNumDestinations();
+		this.m = evaluator.getNumVehicles();
+		if (index.size() != this.n) {
+			throw new IllegalArgumentException("The index must hold the " + this.n + " destinations");
+		}
+		this.k = Math.max(0, Math.min(k, this.n - 1));
+
+		this.capacity = new int[this.m];
+		this.costPerKm = new long[this.m];
+		int maxCapacity = 0;
+		for (int j = 0; j < this.m; j++) {
+			this.capacity[j] = evaluator.getCapacity(j);
+			this.costPerKm[j] = (long) evaluator.getCostPerKm(j) * TimeModel.COST_SCALE;
+			maxCapacity = Math.max(maxCapacity, this.capacity[j]);
+		}
+		this.neighbors = index.neighborLists(this.k);
+
+		final int routeLength = maxCapacity;
+		this.workspaces = ThreadLocal.withInitial(() -> new Workspace(routeLength));
+	}
+
+	/**
+	 * Improve the fittest individuals of an evaluated population, their
+	 * fitness is updated
+	 *
+	 * @param population
+	 *            The population, every individual evaluated
+	 * @param count
+	 *            Number of individuals improved, the fittest ones
+	 */
+	public void improve(Population population, int count) {
+		count = Math.min(count, population.size());
+		Individual fittest[] = new Individual[count];
+		for (int i = 0; i < count; i++) {
+			fittest[i] = population.getFittest(i);
+		}
+		for (Individual individual : fittest) {
+			this.improve(individual);
+		}
+	}
+
+	/**
+	 * Move destinations between the routes of an individual while its cost
+	 * goes down and update its fitness
+	 *
+	 * Individuals with a route over the capacity of its vehicle are left as
+	 * they are.
+	 *
+	 * @param individual
+	 * @return cost The individual's cost in fixed-point
+	 */
+	public long improve(Individual individual) {
+		Workspace w = this.workspaces.get();
+		Population population = individual.getOwner();
+		int row = population != null ? individual.getRow() : -1;
+
+		// Read the routes
+		long before = 0;
+		boolean valid = true;
+		for (int j = 0, start = 0; j < this.m; j++) {
+			int count = individual.getGene(this.n + j);
+			w.workers[j] = individual.getGene(this.n + this.m + j);
+			w.costs[j] = population != null && !population.isRouteDirty(row, j) ? population.getRouteCost(row, j)
+					: this.evaluator.routeCost(individual, start, count, j, w.workers[j], null);
+			before += w.costs[j];
+			if (count > this.capacity[j]) {
+				valid = false;
+			} else {
+				w.counts[j] = count;
+				for (int p = 0; p < count; p++) {
+					w.routes[j][p] = individual.getGene(start + p);
+				}
+				this.routeChanged(w, j);
+			}
+			start += count;
+		}
+		if (!valid || this.k == 0) {
+			individual.setFitness(Evaluator.toFitness(before));
+			return before;
+		}
+
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			boolean improved = false;
+			for (int u = 0; u < this.n; u++) {
+				for (int t = 0; t < this.k; t++) {
+					int v = this.neighbors[u * this.k + t];
+					if (w.routeOf[u] == w.routeOf[v]) {
+						continue;
+					}
+					if (this.relocate(w, u, v) || this.swap(w, u, v) || this.twoOptStar(w, u, v)) {
+						improved = true;
+					}
+				}
+			}
+			if (!improved) {
+				break;
+			}
+		}
+
+		long after = 0;
+		for (int j = 0; j < this.m; j++) {
+			after += w.costs[j];
+		}
+		if (after < before) {
+			// Write the routes back in vehicle order
+			for (int j = 0, start = 0; j < this.m; j++) {
+				System.arraycopy(w.routes[j], 0, w.genes, start, w.counts[j]);
+				start += w.counts[j];
+			}
+			individual.writeGenes(0, w.genes, this.n);
+			individual.writeGenes(this.n, w.counts, this.m);
+		}
+		if (population != null) {
+			for (int j = 0; j < this.m; j++) {
+				population.setRouteCost(row, j, w.costs[j]);
+			}
+		}
+		individual.setFitness(Evaluator.toFitness(Math.min(after, before)));
+		return Math.min(after, before);
+	}
+
+	/**
+	 * Move u next to v, before or after it
+	 */
+	private boolean relocate(Workspace w, int u, int v) {
+		int a = w.routeOf[u];
+		int b = w.routeOf[v];
+		if (w.counts[b] >= this.capacity[b]) {
+			return false;
+		}
+		int routeA[] = w.routes[a];
+		int countA = w.counts[a];
+		int i = w.positionOf[u];
+		int prevU = i > 0 ? routeA[i - 1] : this.distanceMatrix.getDepot();
+		int nextU = i + 1 < countA ? routeA[i + 1] : -1;
+		int distanceA = w.distance[a] - this.d(prevU, u) - this.d(u, nextU) + this.d(prevU, nextU);
+
+		int routeB[] = w.routes[b];
+		int countB = w.counts[b];
+		for (int q = w.positionOf[v]; q <= w.positionOf[v] + 1; q++) {
+			// Insert u at position q of route b
+			int prev = q > 0 ? routeB[q - 1] : this.distanceMatrix.getDepot();
+			int next = q < countB ? routeB[q] : -1;
+			int distanceB = w.distance[b] + this.d(prev, u) + this.d(u, next) - this.d(prev, next);
+			if (this.bound(a, distanceA, b, distanceB) >= w.costs[a] + w.costs[b]) {
+				continue;
+			}
+
+			System.arraycopy(routeA, 0, w.candidateA, 0, i);
+			System.arraycopy(routeA, i + 1, w.candidateA, i, countA - i - 1);
+			System.arraycopy(routeB, 0, w.candidateB, 0, q);
+			w.candidateB[q] = u;
+			System.arraycopy(routeB, q, w.candidateB, q + 1, countB - q);
+			if (this.apply(w, a, countA - 1, b, countB + 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Exchange u and v
+	 */
+	private boolean swap(Workspace w, int u, int v) {
+		int a = w.routeOf[u];
+		int b = w.routeOf[v];
+		int routeA[] = w.routes[a];
+		int routeB[] = w.routes[b];
+		int countA = w.counts[a];
+		int countB = w.counts[b];
+		int i = w.positionOf[u];
+		int p = w.positionOf[v];
+		int depot = this.distanceMatrix.getDepot();
+
+		int prevU = i > 0 ? routeA[i - 1] : depot;
+		int nextU = i + 1 < countA ? routeA[i + 1] : -1;
+		int prevV = p > 0 ? routeB[p - 1] : depot;
+		int nextV = p + 1 < countB ? routeB[p + 1] : -1;
+		int distanceA = w.distance[a] - this.d(prevU, u) - this.d(u, nextU) + this.d(prevU, v) + this.d(v, nextU);
+		int distanceB = w.distance[b] - this.d(prevV, v) - this.d(v, nextV) + this.d(prevV, u) + this.d(u, nextV);
+		if (this.bound(a, distanceA, b, distanceB) >= w.costs[a] + w.costs[b]) {
+			return false;
+		}
+
+		System.arraycopy(routeA, 0, w.candidateA, 0, countA);
+		System.arraycopy(routeB, 0, w.candidateB, 0, countB);
+		w.candidateA[i] = v;
+		w.candidateB[p] = u;
+		return this.apply(w, a, countA, b, countB);
+	}
+
+	/**
+	 * Exchange tails so u is followed by v: route a keeps its destinations up
+	 * to u and continues with v and the rest of route b, route b keeps the
+	 * destinations before v and continues with the rest of route a
+	 */
+	private boolean twoOptStar(Workspace w, int u, int v) {
+		int a = w.routeOf[u];
+		int b = w.routeOf[v];
+		int routeA[] = w.routes[a];
+		int routeB[] = w.routes[b];
+		int countA = w.counts[a];
+		int countB = w.counts[b];
+		int i = w.positionOf[u];
+		int p = w.positionOf[v];
+		int newCountA = i + 1 + countB - p;
+		int newCountB = p + countA - i - 1;
+		if (newCountA > this.capacity[a] || newCountB > this.capacity[b]) {
+			return false;
+		}
+
+		int distanceA = w.prefix[a][i] + this.d(u, v) + w.distance[b] - w.prefix[b][p];
+		int distanceB = p > 0 ? w.prefix[b][p - 1] : 0;
+		if (i + 1 < countA) {
+			int prev = p > 0 ? routeB[p - 1] : this.distanceMatrix.getDepot();
+			distanceB += this.d(prev, routeA[i + 1]) + w.distance[a] - w.prefix[a][i + 1];
+		}
+		if (this.bound(a, distanceA, b, distanceB) >= w.costs[a] + w.costs[b]) {
+			return false;
+		}
+
+		System.arraycopy(routeA, 0, w.candidateA, 0, i + 1);
+		System.arraycopy(routeB, p, w.candidateA, i + 1, countB - p);
+		System.arraycopy(routeB, 0, w.candidateB, 0, p);
+		System.arraycopy(routeA, i + 1, w.candidateB, p, countA - i - 1);
+		return this.apply(w, a, newCountA, b, newCountB);
+	}
+
+	/**
+	 * Replace routes a and b with the candidates if their exact cost is lower
+	 */
+	private boolean apply(Workspace w, int a, int countA, int b, int countB) {
+		long costA = this.evaluator.routeCost(w.candidateA, 0, countA, a, w.workers[a], null);
+		long costB = this.evaluator.routeCost(w.candidateB, 0, countB, b, w.workers[b], null);
+		if (costA + costB >= w.costs[a] + w.costs[b]) {
+			return false;
+		}
+		System.arraycopy(w.candidateA, 0, w.routes[a], 0, countA);
+		System.arraycopy(w.candidateB, 0, w.routes[b], 0, countB);
+		w.counts[a] = countA;
+		w.counts[b] = countB;
+		w.costs[a] = costA;
+		w.costs[b] = costB;
+		this.routeChanged(w, a);
+		this.routeChanged(w, b);
+		return true;
+	}
+
+	/**
+	 * Update the positions and distances of a route
+	 */
+	private void routeChanged(Workspace w, int j) {
+		int route[] = w.routes[j];
+		int distance = 0;
+		for (int p = 0, prev = this.distanceMatrix.getDepot(); p < w.counts[j]; p++) {
+			distance += this.distanceMatrix.distance(prev, route[p]);
+			w.prefix[j][p] = distance;
+			w.routeOf[route[p]] = j;
+			w.positionOf[route[p]] = p;
+			prev = route[p];
+		}
+		w.distance[j] = distance;
+	}
+
+	/**
+	 * Distance cost of two routes, a lower bound of their cost
+	 */
+	private long bound(int a, int distanceA, int b, int distanceB) {
+		return distanceA * this.costPerKm[a] + distanceB * this.costPerKm[b];
+	}
+
+	/**
+	 * Distance between two points, 0 when there's no second point
+	 */
+	private int d(int from, int to) {
+		return to < 0 ? 0 : this.distanceMatrix.distance(from, to);
+	}
+
+	/**
+	 * Routes of the individual being improved, one per thread
+	 */
+	private class Workspace {
+		private final int routes[][] = new int[m][];
+		// Distance from the depot up to each position of each route
+		private final int prefix[][] = new int[m][];
+		private final int counts[] = new int[m];
+		private final int distance[] = new int[m];
+		private final long costs[] = new long[m];
+		private final int workers[] = new int[m];
+		private final int routeOf[] = new int[n];
+		private final int positionOf[] = new int[n];
+		private final int genes[] = new int[n];
+		private final int candidateA[];
+		private final int candidateB[];
+
+		Workspace(int routeLength) {
+			for (int j = 0; j < m; j++) {
+				this.routes[j] = new int[capacity[j]];
+				this.prefix[j] = new int[capacity[j]];
+			}
+			this.candidateA = new int[routeLength];
+			this.candidateB = new int[routeLength];
+		}
+	}
+}
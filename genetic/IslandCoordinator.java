@@ -0,0 +1,261 @@
+package genetic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Coordinator of islands running in other processes
+ *
+ * Every worker connects and sends its island number, then the migrants of
+ * each migration. The coordinator forwards them to the island chosen by the
+ * topology and keeps the global best. When the global best improves it's sent
+ * to every other island. A worker finishes sending its best individual, the
+ * coordinator returns once every worker finished.
+ *
+ * Workers load the instance themselves, only chromosomes and fitness go
+ * through the sockets.
+ *
+ * @author ms
+ *
+ */
+public class IslandCoordinator implements AutoCloseable {
+	// How often the worker processes are checked while waiting for them to connect
+	private static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+
+	private ServerSocket server;
+	private IslandModel.Topology topology = IslandModel.Topology.RING;
+
+	private Connection connections[];
+	private Individual best;
+	// Island i picks the targets of its migrants with stream i
+	private RandomStreams streams = new RandomStreams(RandomStreams.entropy());
+
+	/**
+	 * Listen for workers on the loopback interface
+	 *
+	 * @param port
+	 *            Port to listen on, 0 for any free port
+	 * @throws IOException
+	 */
+	public IslandCoordinator(int port) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Get the port workers have to connect to
+	 *
+	 * @return port
+	 */
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	public void setTopology(IslandModel.Topology topology) {
+		this.topology = topology;
+	}
+
+	/**
+	 * Set the seed the generators choosing migration targets are derived from
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.streams = new RandomStreams(seed);
+	}
+
+	/**
+	 * Accept the workers and relay their migrants until all of them finish
+	 *
+	 * @param numIslands
+	 *            Number of workers, islands are numbered from 0
+	 * @return best The best individual found by any island
+	 * @throws IOException
+	 *             If a worker can't be accepted or disconnects before finishing
+	 */
+	public Individual run(int numIslands) throws IOException {
+		return this.run(numIslands, null);
+	}
+
+	/**
+	 * Accept the workers started as processes and relay their migrants until
+	 * all of them finish
+	 *
+	 * @param numIslands
+	 *            Number of workers, islands are numbered from 0
+	 * @param processes
+	 *            Process of each island, checked while waiting for it to
+	 *            connect, null to wait without checking
+	 * @return best The best individual found by any island
+	 * @throws IOException
+	 *             If a worker can't be accepted, exits before connecting or
+	 *             disconnects before finishing
+	 */
+	public Individual run(int numIslands, List<Process> processes) throws IOException {
+		this.connections = new Connection[numIslands];
+		this.server.setSoTimeout(processes != null ? ACCEPT_TIMEOUT_MILLIS : 0);
+		for (int accepted = 0; accepted < numIslands; accepted++) {
+			Socket socket;
+			try {
+				socket = this.server.accept();
+			} catch (SocketTimeoutException e) {
+				this.checkProcesses(processes);
+				accepted--;
+				continue;
+			}
+			Connection connection = new Connection(socket);
+			int island = connection.in.readInt();
+			if (island < 0 || island >= numIslands || this.connections[island] != null) {
+				connection.socket.close();
+				throw new IOException("Unexpected island " + island);
+			}
+			this.connections[island] = connection;
+		}
+
+		// One reader per worker
+		List<Thread> readers = new ArrayList<>();
+		List<IOException> errors = new ArrayList<>();
+		for (int i = 0; i < numIslands; i++) {
+			final int island = i;
+			Thread reader = new Thread(() -> {
+				try {
+					this.read(island);
+				} catch (IOException e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			}, "island-" + island);
+			reader.start();
+			readers.add(reader);
+		}
+		for (Thread reader : readers) {
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the workers", e);
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+		return this.best;
+	}
+
+	/**
+	 * Fail if a worker that didn't connect yet has exited
+	 */
+	private void checkProcesses(List<Process> processes) throws IOException {
+		for (int island = 0; island < processes.size(); island++) {
+			Process process = processes.get(island);
+			if (this.connections[island] == null && !process.isAlive()) {
+				throw new IOException(
+						"Worker of island " + island + " exited with " + process.exitValue() + " before connecting");
+			}
+		}
+	}
+
+	/**
+	 * Get the best individual received so far
+	 *
+	 * @return best
+	 */
+	public synchronized Individual getBest() {
+		return this.best;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.connections != null) {
+			for (Connection connection : this.connections) {
+				if (connection != null) {
+					connection.socket.close();
+				}
+			}
+		}
+		this.server.close();
+	}
+
+	/**
+	 * Handle the messages of a worker until it's done
+	 */
+	private void read(int island) throws IOException {
+		Connection connection = this.connections[island];
+		Random random = this.streams.stream(island);
+		while (true) {
+			byte type = connection.in.readByte();
+			Individual individuals[] = Migration.read(connection.in);
+			boolean improved = individuals.length > 0 && this.offerBest(individuals[0]);
+
+			if (type == Migration.DONE) {
+				connection.done = true;
+				connection.socket.close();
+				return;
+			}
+			if (type == Migration.MIGRANTS && this.connections.length > 1) {
+				int target = IslandModel.target(this.topology, island, this.connections.length, random);
+				this.send(target, Migration.MIGRANTS, individuals);
+			}
+			if (improved) {
+				for (int i = 0; i < this.connections.length; i++) {
+					if (i != island) {
+						this.send(i, Migration.BEST, individuals[0]);
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized boolean offerBest(Individual individual) {
+		if (this.best == null || individual.getFitness() > this.best.getFitness()) {
+			this.best = individual;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Send a message to a worker, ignored if the worker already finished
+	 */
+	private void send(int island, byte type, Individual... individuals) {
+		Connection connection = this.connections[island];
+		synchronized (connection) {
+			if (connection.done) {
+				return;
+			}
+			try {
+				Migration.write(connection.out, type, individuals);
+			} catch (IOException e) {
+				// The worker finished while the message was sent
+				connection.done = true;
+			}
+		}
+	}
+
+	/**
+	 * Socket of a worker with its streams
+	 */
+	private static class Connection {
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private volatile boolean done = false;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+	}
+}
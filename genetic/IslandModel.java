@@ -0,0 +1,356 @@
+package genetic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Island model, several populations evolved at the same time
+ *
+ * Each island is a population with its own GeneticAlgorithm running on its
+ * own thread. Every few generations an island sends copies of its best
+ * individuals to its neighbours, which replace their worst individuals with
+ * them if they are better.
+ *
+ * Migrants are left in a lock-free queue of the receiving island and taken
+ * the next time it migrates, so islands never wait for each other and may
+ * be at different generations.
+ *
+ * @author ms
+ *
+ */
+public class IslandModel {
+
+	/**
+	 * Islands an island sends its migrants to
+	 */
+	public enum Topology {
+		// To the next island, the last one sends to the first
+		RING,
+		// To a different island chosen at random each time
+		RANDOM
+	}
+
+	private int numIslands;
+	private int populationSize;
+	private double mutationRate;
+	private double crossoverRate;
+	private int elitismCount;
+	private int tournamentSize;
+
+	private Topology topology = Topology.RING;
+	private int migrationInterval = 50;
+	private int migrationSize = 2;
+	private int fitnessCacheSize = 0;
+	// Criteria copied for each island, null to stop after maxGenerations
+	private TerminationCriteria criteria;
+	// Shared by every island, they keep their buffers per thread
+	private LocalSearch localSearch;
+	private InterRouteSearch interRouteSearch;
+	private Seeder seeder;
+	// Island i evolves with stream 0 of streams.derive(i) and picks migration targets with stream 1
+	private RandomStreams streams = new RandomStreams(RandomStreams.entropy());
+
+	private GeneticAlgorithm algorithms[];
+	private TerminationCriteria islandCriteria[];
+	private Population populations[];
+	private List<ConcurrentLinkedQueue<Individual>> mailboxes;
+
+	/**
+	 * Initialize island model, every island uses the same parameters
+	 *
+	 * @param numIslands
+	 *            Number of populations, each one runs on its own thread
+	 * @param populationSize
+	 *            Size of each island's population
+	 * @param mutationRate
+	 * @param crossoverRate
+	 * @param elitismCount
+	 * @param tournamentSize
+	 */
+	public IslandModel(int numIslands, int populationSize, double mutationRate, double crossoverRate,
+			int elitismCount, int tournamentSize) {
+		if (numIslands < 1) {
+			throw new IllegalArgumentException("There must be at least 1 island");
+		}
+		this.numIslands = numIslands;
+		this.populationSize = populationSize;
+		this.mutationRate = mutationRate;
+		this.crossoverRate = crossoverRate;
+		this.elitismCount = elitismCount;
+		this.tournamentSize = tournamentSize;
+	}
+
+	/**
+	 * Set where migrants are sent
+	 *
+	 * @param topology
+	 */
+	public void setTopology(Topology topology) {
+		this.topology = topology;
+	}
+
+	public Topology getTopology() {
+		return this.topology;
+	}
+
+	/**
+	 * Set how often islands exchange individuals
+	 *
+	 * @param migrationInterval
+	 *            Generations between migrations
+	 */
+	public void setMigrationInterval(int migrationInterval) {
+		if (migrationInterval < 1) {
+			throw new IllegalArgumentException("Migration interval must be at least 1");
+		}
+		this.migrationInterval = migrationInterval;
+	}
+
+	public int getMigrationInterval() {
+		return this.migrationInterval;
+	}
+
+	/**
+	 * Set how many individuals are sent on each migration
+	 *
+	 * @param migrationSize
+	 *            Number of best individuals sent, 0 to never migrate
+	 */
+	public void setMigrationSize(int migrationSize) {
+		if (migrationSize < 0 || migrationSize >= this.populationSize) {
+			throw new IllegalArgumentException("Migration size must be between 0 and the population size");
+		}
+		this.migrationSize = migrationSize;
+	}
+
+	public int getMigrationSize() {
+		return this.migrationSize;
+	}
+
+	/**
+	 * Set the seed every island's generators are derived from, the islands
+	 * draw the same numbers for the same seed
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.streams = new RandomStreams(seed);
+	}
+
+	/**
+	 * Set when the islands stop, each island checks its own copy of the
+	 * criteria against its own population
+	 *
+	 * @param criteria
+	 *            The criteria, null to stop after the generations given to run
+	 */
+	public void setTerminationCriteria(TerminationCriteria criteria) {
+		this.criteria = criteria;
+	}
+
+	public TerminationCriteria getTerminationCriteria() {
+		return this.criteria;
+	}
+
+	/**
+	 * Set the memetic steps and seeding applied by every island, see the
+	 * setters of GeneticAlgorithm
+	 *
+	 * @param localSearch
+	 *            Local search of the routes, null to not apply any
+	 * @param interRouteSearch
+	 *            Moves between routes, null to not apply any
+	 * @param seeder
+	 *            Heuristics for the initial populations, null to build them at
+	 *            random
+	 */
+	public void setImprovements(LocalSearch localSearch, InterRouteSearch interRouteSearch, Seeder seeder) {
+		this.localSearch = localSearch;
+		this.interRouteSearch = interRouteSearch;
+		this.seeder = seeder;
+	}
+
+	/**
+	 * Set the size of each island's fitness cache
+	 *
+	 * @param fitnessCacheSize
+	 *            Chromosomes kept by each island, 0 for no cache
+	 */
+	public void setFitnessCacheSize(int fitnessCacheSize) {
+		this.fitnessCacheSize = fitnessCacheSize;
+	}
+
+	/**
+	 * Evolve every island until each one reaches the last generation
+	 *
+	 * @param numDestinations
+	 *            The number of destinations
+	 * @param vehicles
+	 * @param workers
+	 * @param evaluator
+	 *            The evaluation kernel, shared by every island
+	 * @param maxGenerations
+	 *            Generations evolved by each island, unless criteria were set
+	 * @return fittest The best individual of every island
+	 */
+	public Individual run(int numDestinations, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+			Evaluator evaluator, int maxGenerations) {
+		this.algorithms = new GeneticAlgorithm[this.numIslands];
+		this.islandCriteria = new TerminationCriteria[this.numIslands];
+		this.populations = new Population[this.numIslands];
+		this.mailboxes = new ArrayList<>();
+		for (int i = 0; i < this.numIslands; i++) {
+			this.algorithms[i] = new GeneticAlgorithm(this.populationSize, this.mutationRate, this.crossoverRate,
+					this.elitismCount, this.tournamentSize);
+			this.algorithms[i].setRandom(this.streams.derive(i).stream(0));
+			this.algorithms[i].setLocalSearch(this.localSearch);
+			this.algorithms[i].setInterRouteSearch(this.interRouteSearch);
+			this.algorithms[i].setSeeder(this.seeder);
+			this.islandCriteria[i] = this.criteria != null ? this.criteria.copy()
+					: new TerminationCriteria(maxGenerations);
+			if (this.fitnessCacheSize > 0) {
+				this.algorithms[i].setFitnessCache(new FitnessCache(this.fitnessCacheSize));
+			}
+			this.mailboxes.add(new ConcurrentLinkedQueue<>());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.numIslands);
+		try {
+			List<Future<?>> islands = new ArrayList<>();
+			for (int i = 0; i < this.numIslands; i++) {
+				final int island = i;
+				islands.add(executor.submit(
+						() -> this.evolve(island, numDestinations, vehicles, workers, evaluator)));
+			}
+			for (Future<?> island : islands) {
+				island.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while evolving the islands", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("An island failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return this.getFittest();
+	}
+
+	/**
+	 * Get the best individual of every island after run
+	 *
+	 * @return fittest
+	 */
+	public Individual getFittest() {
+		Individual fittest = null;
+		for (Population population : this.populations) {
+			Individual best = population.getFittest(0);
+			if (fittest == null || best.getFitness() > fittest.getFitness()) {
+				fittest = best;
+			}
+		}
+		return fittest;
+	}
+
+	/**
+	 * Get the criterion that stopped each island after run
+	 *
+	 * @return reasons By island
+	 */
+	public TerminationCriteria.Reason[] getReasons() {
+		TerminationCriteria.Reason reasons[] = new TerminationCriteria.Reason[this.numIslands];
+		for (int i = 0; i < this.numIslands; i++) {
+			reasons[i] = this.islandCriteria[i].getReason();
+		}
+		return reasons;
+	}
+
+	/**
+	 * Get the populations of the islands after run
+	 *
+	 * @return populations
+	 */
+	public Population[] getPopulations() {
+		return this.populations;
+	}
+
+	/**
+	 * Same loop as a single population, migrating every migrationInterval
+	 * generations
+	 */
+	private void evolve(int island, int numDestinations, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+			Evaluator evaluator) {
+		GeneticAlgorithm ga = this.algorithms[island];
+		TerminationCriteria criteria = this.islandCriteria[island].start();
+		Random random = this.streams.derive(island).stream(1);
+		Population population = ga.initPopulation(numDestinations, vehicles.size(), vehicles, workers);
+		ga.evalPopulation(population, evaluator);
+		this.populations[island] = population;
+
+		int generation = 1;
+		while (ga.isTerminationConditionMet(generation, population, criteria) == false) {
+			population = ga.crossoverPopulation(population, vehicles, workers);
+			population = ga.mutatePopulation(population, numDestinations, vehicles.size());
+			ga.evalPopulation(population, evaluator);
+
+			if (this.numIslands > 1 && this.migrationSize > 0 && generation % this.migrationInterval == 0) {
+				this.emigrate(island, population, random);
+				this.immigrate(island, population);
+			}
+			this.populations[island] = population;
+			generation++;
+		}
+	}
+
+	/**
+	 * Send copies of the best individuals to the next island in the topology
+	 */
+	private void emigrate(int island, Population population, Random random) {
+		int target = target(this.topology, island, this.numIslands, random);
+		for (Individual migrant : Migration.emigrants(population, this.migrationSize)) {
+			this.mailboxes.get(target).offer(migrant);
+		}
+	}
+
+	/**
+	 * Replace the worst individuals with the migrants received
+	 */
+	private void immigrate(int island, Population population) {
+		Migration.immigrate(population, this.mailboxes.get(island), this.migrationSize * (this.numIslands - 1),
+				this.elitismCount);
+	}
+
+	/**
+	 * Get the island receiving the migrants of another one
+	 *
+	 * @param topology
+	 * @param island
+	 *            The island sending migrants
+	 * @param numIslands
+	 *            Number of islands, at least 2
+	 * @param random
+	 *            Generator of the sending island
+	 * @return target
+	 */
+	static int target(Topology topology, int island, int numIslands, Random random) {
+		if (topology == Topology.RING) {
+			return (island + 1) % numIslands;
+		}
+		// Any island but this one
+		int target = random.nextInt(numIslands - 1);
+		if (target >= island) {
+			target++;
+		}
+		return target;
+	}
+}
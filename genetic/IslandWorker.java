@@ -0,0 +1,170 @@
+package genetic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import model.Vehicle;
+import model.Worker;
+
+/**
+ * Island evolved in its own process, exchanging migrants through an
+ * IslandCoordinator
+ *
+ * Migrants and global bests sent by the coordinator are read on a separate
+ * thread into a lock-free queue, the evolution loop takes them when it
+ * migrates and never waits for the network.
+ *
+ * @author ms
+ *
+ */
+public class IslandWorker implements AutoCloseable {
+	private int island;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+	private ConcurrentLinkedQueue<Individual> mailbox = new ConcurrentLinkedQueue<>();
+
+	private int migrationInterval = 50;
+	private int migrationSize = 2;
+
+	/**
+	 * Connect to the coordinator
+	 *
+	 * @param host
+	 * @param port
+	 * @param island
+	 *            Number of this island, from 0
+	 * @throws IOException
+	 */
+	public IslandWorker(String host, int port, int island) throws IOException {
+		this.island = island;
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+		this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+		this.out.writeInt(island);
+		this.out.flush();
+	}
+
+	/**
+	 * Set how often migrants are exchanged
+	 *
+	 * @param migrationInterval
+	 *            Generations between migrations
+	 */
+	public void setMigrationInterval(int migrationInterval) {
+		if (migrationInterval < 1) {
+			throw new IllegalArgumentException("Migration interval must be at least 1");
+		}
+		this.migrationInterval = migrationInterval;
+	}
+
+	/**
+	 * Set how many individuals are sent on each migration
+	 *
+	 * @param migrationSize
+	 */
+	public void setMigrationSize(int migrationSize) {
+		if (migrationSize < 1) {
+			throw new IllegalArgumentException("Migration size must be at least 1");
+		}
+		this.migrationSize = migrationSize;
+	}
+
+	/**
+	 * Evolve the island and send its best individual to the coordinator
+	 *
+	 * @param ga
+	 *            The algorithm evolving this island
+	 * @param numDestinations
+	 *            The number of destinations
+	 * @param vehicles
+	 * @param workers
+	 * @param evaluator
+	 * @param maxGenerations
+	 * @param elitismCount
+	 *            Number of best individuals never replaced by migrants
+	 * @return fittest The best individual of this island
+	 * @throws IOException
+	 */
+	public Individual run(GeneticAlgorithm ga, int numDestinations, ArrayList<Vehicle> vehicles,
+			ArrayList<Worker> workers, Evaluator evaluator, int maxGenerations, int elitismCount) throws IOException {
+		return this.run(ga, numDestinations, vehicles, workers, evaluator, new TerminationCriteria(maxGenerations),
+				elitismCount);
+	}
+
+	/**
+	 * Evolve the island until a criterion is met and send its best individual
+	 * to the coordinator
+	 *
+	 * @param ga
+	 *            The algorithm evolving this island
+	 * @param numDestinations
+	 *            The number of destinations
+	 * @param vehicles
+	 * @param workers
+	 * @param evaluator
+	 * @param criteria
+	 *            When this island stops, started here
+	 * @param elitismCount
+	 *            Number of best individuals never replaced by migrants
+	 * @return fittest The best individual of this island
+	 * @throws IOException
+	 */
+	public Individual run(GeneticAlgorithm ga, int numDestinations, ArrayList<Vehicle> vehicles,
+			ArrayList<Worker> workers, Evaluator evaluator, TerminationCriteria criteria, int elitismCount)
+			throws IOException {
+		Thread reader = new Thread(this::receive, "island-" + this.island + "-mailbox");
+		reader.setDaemon(true);
+		reader.start();
+
+		Population population = ga.initPopulation(numDestinations, vehicles.size(), vehicles, workers);
+		ga.evalPopulation(population, evaluator);
+		criteria.start();
+
+		int generation = 1;
+		while (ga.isTerminationConditionMet(generation, population, criteria) == false) {
+			population = ga.crossoverPopulation(population, vehicles, workers);
+			population = ga.mutatePopulation(population, numDestinations, vehicles.size());
+			ga.evalPopulation(population, evaluator);
+
+			if (generation % this.migrationInterval == 0) {
+				Migration.write(this.out, Migration.MIGRANTS, Migration.emigrants(population, this.migrationSize));
+				// Migrants from one island and the global best
+				Migration.immigrate(population, this.mailbox, this.migrationSize + 1, elitismCount);
+			}
+			generation++;
+		}
+
+		Individual fittest = population.getFittest(0);
+		Migration.write(this.out, Migration.DONE, Migration.emigrants(population, 1));
+		return fittest;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+
+	/**
+	 * Read messages from the coordinator until the connection is closed
+	 */
+	private void receive() {
+		try {
+			while (true) {
+				this.in.readByte();
+				for (Individual individual : Migration.read(this.in)) {
+					this.mailbox.offer(individual);
+				}
+			}
+		} catch (IOException e) {
+			// Connection closed, no more migrants
+		}
+	}
+}
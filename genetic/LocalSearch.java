@@ -0,0 +1,472 @@
+package genetic;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Memetic step that improves the visiting order inside every route of the
+ * best individuals of a population with 2-opt and Or-opt moves
+ *
+ * Routes are open paths from the depot, so the distance change of a move only
+ * depends on the edges it replaces and is read from the distance matrix in
+ * constant time. Moves whose distance cost alone is already at least the
+ * route's cost are discarded without looking further; this keeps every move
+ * that shortens the route and, on late routes, the ones that could still save
+ * penalties. The start time and overtime only depend on the new distance.
+ * Each leg's travel time is rounded on its own, so the arrivals are prefix
+ * sums of the legs and a move shifts every destination after a changed edge by
+ * the same minutes. The late hours of a shifted range are read from counts
+ * kept for every prefix of the route, and only the destinations moved by
+ * Or-opt, at most three, are calculated one by one; 2-opt reads its
+ * reversed destinations from the same arrivals, stopping as soon as the move
+ * can't improve the route. The exact cost of the route is only calculated to
+ * check accepted moves when assertions are enabled. Improved routes are
+ * written back into the chromosome and their cost is stored, the other routes
+ * are not evaluated again.
+ *
+ * @author ms
+ *
+ */
+public class LocalSearch {
+	// Longest run of destinations moved by Or-opt
+	private static final int OR_OPT_LENGTH = 3;
+	// Passes over the moves of a route, stops earlier when a pass finds nothing
+	private static final int MAX_PASSES = 20;
+
+	private Evaluator evaluator;
+	private DistanceMatrix distanceMatrix;
+	private double fraction;
+	private int n;
+	private int m;
+	private TimeModel timeModel;
+
+	// Route being improved, one per thread
+	private final ThreadLocal<Workspace> workspaces;
+
+	/**
+	 * Initialize local search
+	 *
+	 * @param evaluator
+	 *            The evaluation kernel of the problem
+	 * @param fraction
+	 *            Fraction of the population improved, the fittest ones
+	 */
+	public LocalSearch(Evaluator evaluator, double fraction) {
+		this.evaluator = evaluator;
+		this.distanceMatrix = evaluator.getDistanceMatrix();
+		this.timeModel = evaluator.getTimeModel();
+		this.n = evaluator.getNumDestinations();
+		this.m = evaluator.getNumVehicles();
+		this.setFraction(fraction);
+		final int length = Math.max(1, this.n);
+		this.workspaces = ThreadLocal.withInitial(() -> new Workspace(length));
+	}
+
+	/**
+	 * Set the fraction of the population improved
+	 *
+	 * @param fraction
+	 *            Between 0 and 1
+	 */
+	public void setFraction(double fraction) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("Fraction must be between 0 and 1");
+		}
+		this.fraction = fraction;
+	}
+
+	public double getFraction() {
+		return this.fraction;
+	}
+
+	/**
+	 * Improve the fittest individuals of an evaluated population, their
+	 * fitness is updated
+	 *
+	 * @param population
+	 *            The population, every individual evaluated
+	 * @param pool
+	 *            Pool to improve individuals in parallel, null to improve them
+	 *            on the calling thread
+	 */
+	public void improve(Population population, ForkJoinPool pool) {
+		int count = Math.min(population.size(), (int) Math.ceil(this.fraction * population.size()));
+		Individual fittest[] = new Individual[count];
+		for (int i = 0; i < count; i++) {
+			fittest[i] = population.getFittest(i);
+		}
+
+		if (pool != null && count > 1) {
+			pool.invoke(new SearchTask(fittest, 0, count));
+		} else {
+			for (Individual individual : fittest) {
+				this.improve(individual);
+			}
+		}
+	}
+
+	/**
+	 * Improve the order of every route of an individual and update its
+	 * fitness
+	 *
+	 * @param individual
+	 * @return cost The individual's cost in fixed-point
+	 */
+	public long improve(Individual individual) {
+		Workspace w = this.workspaces.get();
+		int route[] = w.route;
+		Population population = individual.getOwner();
+		int row = population != null ? individual.getRow() : -1;
+
+		long total = 0;
+		for (int j = 0, k = 0; j < this.m; j++) {
+			int count = individual.getGene(this.n + j);
+			int worker = individual.getGene(this.n + this.m + j);
+			long cost = population != null && !population.isRouteDirty(row, j) ? population.getRouteCost(row, j)
+					: this.evaluator.routeCost(individual, k, count, j, worker, null);
+
+			if (count > 1) {
+				for (int i = 0; i < count; i++) {
+					route[i] = individual.getGene(k + i);
+				}
+				long improved = this.improveRoute(w, count, j, worker, cost);
+				if (improved < cost) {
+					individual.writeGenes(k, route, count);
+					cost = improved;
+				}
+			}
+			if (population != null) {
+				population.setRouteCost(row, j, cost);
+			}
+			total += cost;
+			k += count;
+		}
+
+		individual.setFitness(Evaluator.toFitness(total));
+		return total;
+	}
+
+	/**
+	 * Apply improving 2-opt and Or-opt moves to a route until a pass finds
+	 * none
+	 *
+	 * @param w
+	 *            Workspace holding the route, left in the improved order
+	 * @return cost The cost of the improved route
+	 */
+	private long improveRoute(Workspace w, int count, int vehicle, int worker, long cost) {
+		int route[] = w.route;
+		int arrival[] = w.arrival;
+		int depot = this.distanceMatrix.getDepot();
+		int speed = this.evaluator.getSpeed(vehicle);
+		long costPerKm = (long) this.evaluator.getCostPerKm(vehicle) * TimeModel.COST_SCALE;
+		long latePenalty = this.evaluator.getLatePenalty();
+		this.load(w, count, vehicle, worker);
+
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			boolean improved = false;
+
+			// 2-opt: reverse route[i..k], an open path has no edge after the last destination
+			for (int i = 0; i < count - 1; i++) {
+				int before = i == 0 ? depot : route[i - 1];
+				int beforeArrival = i == 0 ? 0 : arrival[i - 1];
+				for (int k = i + 1; k < count; k++) {
+					int delta = this.distanceMatrix.distance(before, route[k])
+							- this.distanceMatrix.distance(before, route[i]);
+					if (k + 1 < count) {
+						delta += this.distanceMatrix.distance(route[i], route[k + 1])
+								- this.distanceMatrix.distance(route[k], route[k + 1]);
+					}
+					int distance = w.distance + delta;
+					if (distance * costPerKm >= cost) {
+						continue;
+					}
+
+					// Legs take the same time both ways, the reversed part is reached in reverse order
+					int startTime = this.evaluator.startTime(distance, vehicle, worker);
+					int shift = startTime - w.startTime;
+					int first = beforeArrival + this.minutes(before, route[k], speed);
+					long hours = this.lateHours(w, 0, i, shift);
+					if (k + 1 < count) {
+						int next = first + arrival[k] - arrival[i] + this.minutes(route[i], route[k + 1], speed);
+						hours += this.lateHours(w, k + 1, count, shift + next - arrival[k + 1]);
+					}
+					long candidateCost = distance * costPerKm + this.evaluator.overtimeCost(startTime, distance, vehicle);
+					for (int a = k; a >= i && candidateCost + hours * latePenalty < cost; a--) {
+						hours += Evaluator.lateHours(startTime + first + arrival[k] - arrival[a] - this.deadline(route[a]));
+					}
+					candidateCost += hours * latePenalty;
+					if (candidateCost < cost) {
+						System.arraycopy(route, 0, w.candidate, 0, count);
+						for (int a = i, b = k; a <= k; a++, b--) {
+							w.candidate[a] = route[b];
+						}
+						cost = this.accept(w, count, vehicle, worker, candidateCost);
+						improved = true;
+					}
+				}
+			}
+
+			// Or-opt: move route[i..i+length) after route[j], or first when j is -1
+			for (int length = 1; length <= OR_OPT_LENGTH && length < count; length++) {
+				for (int i = 0; i + length <= count; i++) {
+					int first = route[i];
+					int last = route[i + length - 1];
+					int before = i == 0 ? depot : route[i - 1];
+					int beforeArrival = i == 0 ? 0 : arrival[i - 1];
+					// Time inside the moved destinations
+					int inside = arrival[i + length - 1] - arrival[i];
+					for (int j = -1; j < count; j++) {
+						if (j >= i - 1 && j < i + length) {
+							continue;
+						}
+						int removed = this.distanceMatrix.distance(before, first);
+						if (i + length < count) {
+							int after = route[i + length];
+							removed += this.distanceMatrix.distance(last, after)
+									- this.distanceMatrix.distance(before, after);
+						}
+						int prev = j < 0 ? depot : route[j];
+						int added = this.distanceMatrix.distance(prev, first);
+						if (j + 1 < count) {
+							int next = route[j + 1];
+							added += this.distanceMatrix.distance(last, next) - this.distanceMatrix.distance(prev, next);
+						}
+						int delta = added - removed;
+						int distance = w.distance + delta;
+						if (distance * costPerKm >= cost) {
+							continue;
+						}
+
+						// Destinations between the old and new place, and after both, arrive shifted by the same time
+						int startTime = this.evaluator.startTime(distance, vehicle, worker);
+						int shift = startTime - w.startTime;
+						long hours;
+						int moved;
+						if (j < i) {
+							hours = this.lateHours(w, 0, j + 1, shift);
+							moved = (j < 0 ? 0 : arrival[j]) + this.minutes(prev, first, speed);
+							int between = moved + inside + this.minutes(last, route[j + 1], speed) - arrival[j + 1];
+							hours += this.lateHours(w, j + 1, i, shift + between);
+							if (i + length < count) {
+								int after = arrival[i - 1] + between + this.minutes(route[i - 1], route[i + length], speed);
+								hours += this.lateHours(w, i + length, count, shift + after - arrival[i + length]);
+							}
+						} else {
+							hours = this.lateHours(w, 0, i, shift);
+							int between = beforeArrival + this.minutes(before, route[i + length], speed)
+									- arrival[i + length];
+							hours += this.lateHours(w, i + length, j + 1, shift + between);
+							moved = arrival[j] + between + this.minutes(prev, first, speed);
+							if (j + 1 < count) {
+								int after = moved + inside + this.minutes(last, route[j + 1], speed);
+								hours += this.lateHours(w, j + 1, count, shift + after - arrival[j + 1]);
+							}
+						}
+						for (int a = i; a < i + length; a++) {
+							hours += Evaluator.lateHours(
+									startTime + moved + arrival[a] - arrival[i] - this.deadline(route[a]));
+						}
+						long candidateCost = distance * costPerKm
+								+ this.evaluator.overtimeCost(startTime, distance, vehicle) + hours * latePenalty;
+						if (candidateCost >= cost) {
+							continue;
+						}
+
+						if (j < i) {
+							System.arraycopy(route, 0, w.candidate, 0, j + 1);
+							System.arraycopy(route, i, w.candidate, j + 1, length);
+							System.arraycopy(route, j + 1, w.candidate, j + 1 + length, i - j - 1);
+							System.arraycopy(route, i + length, w.candidate, i + length, count - i - length);
+						} else {
+							System.arraycopy(route, 0, w.candidate, 0, i);
+							System.arraycopy(route, i + length, w.candidate, i, j - i - length + 1);
+							System.arraycopy(route, i, w.candidate, j - length + 1, length);
+							System.arraycopy(route, j + 1, w.candidate, j + 1, count - j - 1);
+						}
+						cost = this.accept(w, count, vehicle, worker, candidateCost);
+						improved = true;
+						// The moved destinations changed position
+						first = route[i];
+						last = route[i + length - 1];
+						before = i == 0 ? depot : route[i - 1];
+						beforeArrival = i == 0 ? 0 : arrival[i - 1];
+						inside = arrival[i + length - 1] - arrival[i];
+					}
+				}
+			}
+
+			if (!improved) {
+				break;
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Make the candidate the route and index it again
+	 *
+	 * @return cost The cost of the candidate, checked against the exact cost
+	 *         of the route when assertions are enabled
+	 */
+	private long accept(Workspace w, int count, int vehicle, int worker, long cost) {
+		assert cost == this.evaluator.routeCost(w.candidate, 0, count, vehicle, worker, null);
+		System.arraycopy(w.candidate, 0, w.route, 0, count);
+		this.load(w, count, vehicle, worker);
+		return cost;
+	}
+
+	/**
+	 * Index the route in the workspace: arrivals from the start, and lateness
+	 * with the route's start time and how many destinations are late for
+	 * every prefix
+	 */
+	private void load(Workspace w, int count, int vehicle, int worker) {
+		int speed = this.evaluator.getSpeed(vehicle);
+		int distance = 0;
+		for (int i = 0, prev = this.distanceMatrix.getDepot(), aTime = 0; i < count; i++) {
+			int destination = w.route[i];
+			distance += this.distanceMatrix.distance(prev, destination);
+			aTime += this.minutes(prev, destination, speed);
+			w.arrival[i] = aTime;
+			prev = destination;
+		}
+		w.distance = distance;
+		w.startTime = this.evaluator.startTime(distance, vehicle, worker);
+
+		for (int i = 0; i < count; i++) {
+			int lateness = w.startTime + w.arrival[i] - this.deadline(w.route[i]);
+			w.lateness[i] = lateness;
+			w.hours[i + 1] = w.hours[i] + Evaluator.lateHours(lateness);
+			w.late[i + 1] = w.late[i] + (lateness > 0 ? 1 : 0);
+		}
+		w.indexed = 0;
+	}
+
+	/**
+	 * Count, for every prefix up to the given one, how many destinations are
+	 * less than each number of minutes away from starting another late hour.
+	 * Built when a move first needs them, most routes have none.
+	 */
+	private void index(Workspace w, int to) {
+		for (int i = w.indexed; i < to; i++) {
+			int lateness = w.lateness[i];
+			// Minutes until the next started hour, the only ones where the penalty changes
+			int untilHour = Math.floorMod(-lateness, 60);
+			int row = i * 60, next = row + 60;
+			for (int t = 0; t < 60; t++) {
+				boolean below = untilHour < t;
+				w.soon[next + t] = w.soon[row + t] + (below && lateness > -60 ? 1 : 0);
+				w.lateSoon[next + t] = w.lateSoon[row + t] + (below && lateness > 0 ? 1 : 0);
+			}
+		}
+		w.indexed = Math.max(w.indexed, to);
+	}
+
+	/**
+	 * Get the started late hours of route[from..to) when every arrival is
+	 * shifted by the same minutes
+	 *
+	 * Shifts under an hour either way are read from the counts in constant
+	 * time: a later arrival starts one more hour for the destinations less
+	 * than shift minutes away from their next hour, an earlier one starts
+	 * one less for the late ones that many minutes past their last hour.
+	 */
+	private long lateHours(Workspace w, int from, int to, int shift) {
+		if (from >= to) {
+			return 0;
+		}
+		long hours = w.hours[to] - w.hours[from];
+		if (shift == 0) {
+			return hours;
+		}
+		if (shift > 0 && shift < 60) {
+			this.index(w, to);
+			return hours + w.soon[to * 60 + shift] - w.soon[from * 60 + shift];
+		} else if (shift < 0 && shift > -60) {
+			this.index(w, to);
+			int late = w.late[to] - w.late[from];
+			int t = 60 + shift;
+			return hours - (late - (w.lateSoon[to * 60 + t] - w.lateSoon[from * 60 + t]));
+		}
+
+		hours = 0;
+		for (int i = from; i < to; i++) {
+			hours += Evaluator.lateHours(w.lateness[i] + shift);
+		}
+		return hours;
+	}
+
+	private int minutes(int from, int to, int speed) {
+		return TimeModel.travelMinutes(this.distanceMatrix.distance(from, to), speed);
+	}
+
+	private int deadline(int destination) {
+		return this.timeModel.getDeadline(destination);
+	}
+
+	/**
+	 * Improves a range of individuals, splitting it in halves until it's small
+	 * enough to be improved by a single thread
+	 */
+	private class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 2;
+
+		private final Individual[] individuals;
+		private final int from;
+		private final int to;
+
+		SearchTask(Individual[] individuals, int from, int to) {
+			this.individuals = individuals;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= THRESHOLD) {
+				for (int i = this.from; i < this.to; i++) {
+					improve(this.individuals[i]);
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new SearchTask(this.individuals, this.from, middle),
+					new SearchTask(this.individuals, middle, this.to));
+		}
+	}
+
+	/**
+	 * Route being improved and its index, one per thread
+	 */
+	private static class Workspace {
+		private int route[];
+		private int candidate[];
+		// Minutes from the start of the route to each destination
+		private int arrival[];
+		private int lateness[];
+		// For each prefix of the route, started late hours and late destinations
+		private int hours[];
+		private int late[];
+		// For each prefix and each t below 60, destinations less than t minutes from their next late hour, all
+		// of them and only the late ones
+		private int soon[];
+		private int lateSoon[];
+		// Prefixes counted in soon and lateSoon
+		private int indexed;
+		private int distance;
+		private int startTime;
+
+		Workspace(int length) {
+			this.route = new int[length];
+			this.candidate = new int[length];
+			this.arrival = new int[length];
+			this.lateness = new int[length];
+			this.hours = new int[length + 1];
+			this.late = new int[length + 1];
+			this.soon = new int[(length + 1) * 60];
+			this.lateSoon = new int[(length + 1) * 60];
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package genetic;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Queue;
+
+/**
+ * Moving individuals between islands, in the same process or through a
+ * socket
+ *
+ * Migrants are copies of an island's best individuals that keep their
+ * fitness, so the receiving island doesn't evaluate them again. On the wire a
+ * migrant is its fitness, its chromosome length and its genes written with 2
+ * bytes each when they fit, 4 bytes otherwise.
+ *
+ * @author ms
+ *
+ */
+public class Migration {
+	/**
+	 * Messages between coordinator and workers, each one followed by a list of
+	 * individuals
+	 */
+	public static final byte MIGRANTS = 1;
+	public static final byte BEST = 2;
+	public static final byte DONE = 3;
+
+	private Migration() {
+	}
+
+	/**
+	 * Copy the best individuals of a population
+	 *
+	 * @param population
+	 *            An evaluated population
+	 * @param count
+	 *            Number of individuals to copy
+	 * @return migrants Copies with their fitness, best first
+	 */
+	public static Individual[] emigrants(Population population, int count) {
+		Individual migrants[] = new Individual[Math.min(count, population.size())];
+		for (int i = 0; i < migrants.length; i++) {
+			Individual best = population.getFittest(i);
+			migrants[i] = new Individual(best.getChromosome());
+			migrants[i].setFitness(best.getFitness());
+		}
+		return migrants;
+	}
+
+	/**
+	 * Replace the worst individuals with the migrants received, only if the
+	 * migrant is better. Every migrant is taken from the queue, those that
+	 * don't fit are dropped.
+	 *
+	 * @param population
+	 *            An evaluated population
+	 * @param mailbox
+	 *            Migrants received
+	 * @param maxReplaced
+	 *            Maximum number of individuals replaced
+	 * @param elitismCount
+	 *            Number of best individuals never replaced
+	 * @return replaced Number of individuals replaced
+	 */
+	public static int immigrate(Population population, Queue<Individual> mailbox, int maxReplaced,
+			int elitismCount) {
+		if (mailbox.isEmpty()) {
+			return 0;
+		}
+
+		// Rows to replace, found before any fitness changes the ranking
+		int size = population.size();
+		int worst[] = new int[Math.max(0, Math.min(size - elitismCount, maxReplaced))];
+		for (int i = 0; i < worst.length; i++) {
+			worst[i] = population.getFittest(size - 1 - i).getRow();
+		}
+
+		int replaced = 0;
+		Individual migrant;
+		while ((migrant = mailbox.poll()) != null) {
+			if (replaced < worst.length) {
+				Individual individual = population.getRow(worst[replaced]);
+				if (migrant.getFitness() > individual.getFitness()) {
+					individual.copyGenes(migrant);
+					individual.setFitness(migrant.getFitness());
+					replaced++;
+				}
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * Write a message with its individuals
+	 *
+	 * @param out
+	 * @param type
+	 *            MIGRANTS, BEST or DONE
+	 * @param individuals
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, byte type, Individual... individuals) throws IOException {
+		out.writeByte(type);
+		out.writeInt(individuals.length);
+		for (Individual individual : individuals) {
+			int length = individual.getChromosomeLength();
+			boolean wide = false;
+			for (int i = 0; i < length && !wide; i++) {
+				wide = (individual.getGene(i) & ~0xFFFF) != 0;
+			}
+			out.writeDouble(individual.getFitness());
+			out.writeInt(length);
+			out.writeBoolean(wide);
+			for (int i = 0; i < length; i++) {
+				if (wide) {
+					out.writeInt(individual.getGene(i));
+				} else {
+					out.writeShort(individual.getGene(i));
+				}
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read the individuals of a message whose type was already read
+	 *
+	 * @param in
+	 * @return individuals With their fitness
+	 * @throws IOException
+	 */
+	public static Individual[] read(DataInputStream in) throws IOException {
+		Individual individuals[] = new Individual[in.readInt()];
+		for (int j = 0; j < individuals.length; j++) {
+			double fitness = in.readDouble();
+			int genes[] = new int[in.readInt()];
+			boolean wide = in.readBoolean();
+			for (int i = 0; i < genes.length; i++) {
+				genes[i] = wide ? in.readInt() : in.readUnsignedShort();
+			}
+			individuals[j] = new Individual(genes);
+			individuals[j].setFitness(fitness);
+		}
+		return individuals;
+	}
+}
@@ -0,0 +1,140 @@
+package genetic;
+
+import java.util.Arrays;
+
+/**
+ * Ordered crossover (OX) for the first and third part of the chromosome in
+ * linear time
+ *
+ * The offspring takes a substring of parent1 and the missing genes are filled
+ * in the order they appear in parent2. Genes already in the offspring are
+ * tracked in a bitset and free positions with a moving cursor, instead of
+ * scanning the offspring for every gene, so each crossover is O(n + m). The
+ * bitset is reused between calls, an instance must not be shared between
+ * threads.
+ *
+ * @author ms
+ *
+ */
+public class OrderedCrossover {
+	private long present[] = new long[1];
+
+	/**
+	 * Ordered crossover of the destinations, genes 0 to n - 1
+	 *
+	 * parent1's genes in [start, end) are kept in place and parent2 is read
+	 * from end, wrapping around, to fill the rest of the positions from 0.
+	 *
+	 * @param parent1
+	 * @param parent2
+	 * @param offspring
+	 *            Individual where the result is written
+	 * @param n
+	 *            Number of destinations
+	 * @param start
+	 *            First position of the substring taken from parent1
+	 * @param end
+	 *            Position after the substring taken from parent1
+	 */
+	public void crossDestinations(Individual parent1, Individual parent2, Individual offspring, int n, int start,
+			int end) {
+		this.clear(n);
+
+		// Add the sub tour from parent1 to our child
+		for (int i = start; i < end; i++) {
+			int gene = parent1.getGene(i);
+			offspring.setGene(i, gene);
+			this.add(gene);
+		}
+
+		// Loop through parent2's city tour adding the missing cities
+		int cursor = start == 0 ? end : 0;
+		for (int i = 0; i < n; i++) {
+			int parent2Gene = i + end;
+			if (parent2Gene >= n) {
+				parent2Gene -= n;
+			}
+			int gene = parent2.getGene(parent2Gene);
+			if (!this.contains(gene)) {
+				this.add(gene);
+				offspring.setGene(cursor, gene);
+				// Skip over the sub tour
+				if (++cursor == start) {
+					cursor = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ordered crossover of the workers, genes n + m to n + 2m - 1
+	 *
+	 * parent1's genes in [start, end) are kept in place and the free
+	 * positions are filled with parent2's workers in order, from its first
+	 * worker.
+	 *
+	 * @param parent1
+	 * @param parent2
+	 * @param offspring
+	 *            Individual where the result is written
+	 * @param n
+	 *            Number of destinations
+	 * @param m
+	 *            Number of vehicles
+	 * @param start
+	 *            First position of the substring taken from parent1
+	 * @param end
+	 *            Position after the substring taken from parent1
+	 */
+	public void crossWorkers(Individual parent1, Individual parent2, Individual offspring, int n, int m, int start,
+			int end) {
+		int first = n + m;
+		int last = n + m + m;
+		this.clear(0);
+
+		// Add the workers from parent1 to our child
+		for (int i = start; i < end; i++) {
+			int gene = parent1.getGene(i);
+			offspring.setGene(i, gene);
+			this.add(gene);
+		}
+
+		// Loop through parent2's workers until every position is filled
+		int cursor = start == first ? end : first;
+		for (int i = first; i < last && cursor < last; i++) {
+			int gene = parent2.getGene(i);
+			if (!this.contains(gene)) {
+				this.add(gene);
+				offspring.setGene(cursor, gene);
+				if (++cursor == start) {
+					cursor = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Empty the bitset making room for genes up to size
+	 */
+	private void clear(int size) {
+		int words = (size >>> 6) + 1;
+		if (words > this.present.length) {
+			this.present = new long[words];
+		} else {
+			Arrays.fill(this.present, 0);
+		}
+	}
+
+	private void add(int gene) {
+		int word = gene >>> 6;
+		if (word >= this.present.length) {
+			this.present = Arrays.copyOf(this.present, Math.max(word + 1, this.present.length * 2));
+		}
+		this.present[word] |= 1L << gene;
+	}
+
+	private boolean contains(int gene) {
+		int word = gene >>> 6;
+		return word < this.present.length && (this.present[word] & (1L << gene)) != 0;
+	}
+}
@@ -2,14 +2,40 @@ package genetic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Random;
 
 import model.Vehicle;
 import model.Worker;
 
+/**
+ * Population of individuals stored in flat primitive arrays
+ * 
+ * Every chromosome is a row of length n + m + m inside a single int array and
+ * every fitness a position of a double array, individuals are views over
+ * their row so there's no array allocated per individual.
+ */
 public class Population {
 	private Individual population[];
+	private int genes[];
+	private double fitness[];
+	// View of each row in storage order, population[] may be shuffled
+	private Individual rows[];
+
+	// Rows ordered by fitness, valid until a fitness changes
+	private int ranking[];
+	private boolean ranked = false;
+	// Scratch buffers for sorting the ranking
+	private long rankKeys[];
+	private long keysBuffer[];
+	private int rowsBuffer[];
+	private int rankCounts[] = new int[257];
+
+	// Cost of each route of each row, kept to evaluate only changed routes
+	private long routeCosts[];
+	// Bitset per row of routes whose cost must be calculated again
+	private long dirtyRoutes[];
+	private int dirtyWords;
+
 	private double populationFitness = -1;
 	private int n;
 	private int m;
@@ -19,10 +45,37 @@ public class Population {
 	 * 
 	 * @param populationSize
 	 *            The size of the population
+	 * @param numDestinations
+	 *            The length of the first part of the chromosome
+	 * @param numVehicles
+	 *            The length of the second and third part of the chromosome
 	 */
-	public Population(int populationSize) {
-		// Initial population
-		this.population = new Individual[populationSize];
+	public Population(int populationSize, int numDestinations, int numVehicles) {
+		this.n = numDestinations;
+		this.m = numVehicles;
+
+		int stride = this.getChromosomeLength();
+		this.genes = new int[populationSize * stride];
+		this.fitness = new double[populationSize];
+		Arrays.fill(this.fitness, -1);
+
+		// Create a view for each row
+		this.rows = new Individual[populationSize];
+		for (int i = 0; i < populationSize; i++) {
+			this.rows[i] = new Individual(this.genes, i * stride, stride, this.fitness, i, this);
+		}
+		this.population = this.rows.clone();
+
+		this.ranking = new int[populationSize];
+		this.rankKeys = new long[populationSize];
+		this.keysBuffer = new long[populationSize];
+		this.rowsBuffer = new int[populationSize];
+
+		// Every route starts unknown
+		this.routeCosts = new long[populationSize * numVehicles];
+		this.dirtyWords = (numVehicles + 63) >>> 6;
+		this.dirtyRoutes = new long[populationSize * this.dirtyWords];
+		Arrays.fill(this.dirtyRoutes, -1L);
 	}
 
 	/**
@@ -38,27 +91,37 @@ public class Population {
 	 *            Array of vehicles to check capacity of each one to generate valid individual
 	 */
 	public Population(int populationSize, int numDestinations, int numVehicles, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers) {
+		this(populationSize, numDestinations, numVehicles, vehicles, workers, new RandomStreams(RandomStreams.entropy()));
+	}
+
+	/**
+	 * Initializes population of individuals, each one drawn from its own
+	 * stream so the same streams give the same population
+	 * 
+	 * @param populationSize
+	 *            The size of the population
+	 * @param numDestinations
+	 *            The length of the first part of the chromosome
+	 * @param numVehicles
+	 *            The length of the second and third part of the chromosome
+	 * @param vehicles
+	 *            Array of vehicles to check capacity of each one to generate valid individual
+	 * @param workers
+	 * @param streams
+	 *            Streams of the individuals, by row
+	 */
+	public Population(int populationSize, int numDestinations, int numVehicles, ArrayList<Vehicle> vehicles, ArrayList<Worker> workers,
+			RandomStreams streams) {
 		// Initial population
-		this.population = new Individual[populationSize];
+		this(populationSize, numDestinations, numVehicles);
 
 		// Loop over population size
 		for (int i = 0; i < populationSize; i++) {
 			// Create individual
-			Individual individual = new Individual(numDestinations, numVehicles, vehicles, workers);
+			Individual individual = new Individual(numDestinations, numVehicles, vehicles, workers, streams.stream(i));
 			// Add individual to population
-			this.population[i] = individual;
+			this.population[i].copyGenes(individual);
 		}
-
-		this.n = numDestinations;
-		this.m = numVehicles;
-	}
-
-	public void setNumDestinations(int numDestinations) {
-		this.n = numDestinations;
-	}
-
-	public void setNumVehicles(int numVehicles) {
-		this.m = numVehicles;
 	}
 
 	/**
@@ -73,25 +136,157 @@ public class Population {
 	/**
 	 * Find fittest individual in the population
 	 * 
+	 * The population is ranked once after its fitness changes, later calls
+	 * only look the ranking up
+	 * 
 	 * @param offset
 	 * @return individual Fittest individual at offset
 	 */
 	public Individual getFittest(int offset) {
-		// Order population by fitness
-		Arrays.sort(this.population, new Comparator<Individual>() {
-			@Override
-			public int compare(Individual o1, Individual o2) {
-				if (o1.getFitness() > o2.getFitness()) {
-					return -1;
-				} else if (o1.getFitness() < o2.getFitness()) {
-					return 1;
-				}
-				return 0;
-			}
-		});
+		if (!this.ranked) {
+			this.rank();
+		}
 
 		// Return the fittest individual
-		return this.population[offset];
+		return this.rows[this.ranking[offset]];
+	}
+
+	/**
+	 * Find the k fittest individuals without ranking the whole population,
+	 * meant for elitism where k is small
+	 * 
+	 * Ties are resolved the same way as in getFittest
+	 * 
+	 * @param k
+	 *            Number of individuals to find
+	 * @param out
+	 *            Array where the rows of the k fittest are written, fittest first
+	 * @return count Number of rows written, less than k if the population is smaller
+	 */
+	public int getFittestRows(int k, int[] out) {
+		k = Math.min(k, this.fitness.length);
+		if (k <= 0) {
+			return 0;
+		}
+		if (this.ranked) {
+			System.arraycopy(this.ranking, 0, out, 0, k);
+			return k;
+		}
+
+		// Keep the best k seen so far ordered by insertion
+		int count = 0;
+		for (int row = 0; row < this.fitness.length; row++) {
+			double f = this.fitness[row];
+			if (count == k && !(f > this.fitness[out[k - 1]])) {
+				continue;
+			}
+			int i = count < k ? count++ : k - 1;
+			while (i > 0 && f > this.fitness[out[i - 1]]) {
+				out[i] = out[i - 1];
+				i--;
+			}
+			out[i] = row;
+		}
+		return count;
+	}
+
+	/**
+	 * Get individual stored at row, rows don't move when the population is
+	 * shuffled
+	 * 
+	 * @param row
+	 * @return individual
+	 */
+	public Individual getRow(int row) {
+		return this.rows[row];
+	}
+
+	/**
+	 * Forget the ranking, called when a fitness changes
+	 */
+	void invalidateRanking() {
+		this.ranked = false;
+	}
+
+	/**
+	 * Copy the genes and fitness of every row, in storage order
+	 * 
+	 * @param genes
+	 *            Array of size() * getChromosomeLength()
+	 * @param fitness
+	 *            Array of size()
+	 */
+	public void copyState(int[] genes, double[] fitness) {
+		System.arraycopy(this.genes, 0, genes, 0, this.genes.length);
+		System.arraycopy(this.fitness, 0, fitness, 0, this.fitness.length);
+	}
+
+	/**
+	 * Replace the genes and fitness of every row, route costs are not known
+	 * and are calculated again on the next evaluation
+	 * 
+	 * @param genes
+	 *            Array of size() * getChromosomeLength()
+	 * @param fitness
+	 *            Array of size()
+	 */
+	public void restoreState(int[] genes, double[] fitness) {
+		System.arraycopy(genes, 0, this.genes, 0, this.genes.length);
+		System.arraycopy(fitness, 0, this.fitness, 0, this.fitness.length);
+		Arrays.fill(this.dirtyRoutes, -1L);
+		this.ranked = false;
+	}
+
+	/**
+	 * Order rows by descending fitness, ties keep the row order
+	 * 
+	 * Fitness values are mapped to long keys with the same ordering and sorted
+	 * with a stable LSD radix sort, so large populations don't pay for
+	 * comparisons
+	 */
+	private void rank() {
+		int size = this.fitness.length;
+		long[] keys = this.rankKeys;
+		int[] order = this.ranking;
+		for (int row = 0; row < size; row++) {
+			long bits = Double.doubleToLongBits(this.fitness[row]);
+			// Ascending order of the key is descending order of the fitness
+			keys[row] = bits < 0 ? bits : ~bits ^ Long.MIN_VALUE;
+			order[row] = row;
+		}
+
+		long[] keysFrom = keys, keysTo = this.keysBuffer;
+		int[] orderFrom = order, orderTo = this.rowsBuffer;
+		int[] counts = this.rankCounts;
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; i++) {
+				counts[(int) ((keysFrom[i] >>> shift) & 0xFF) + 1]++;
+			}
+			// Skip the pass if every key has the same byte
+			if (size == 0 || counts[(int) ((keysFrom[0] >>> shift) & 0xFF) + 1] == size) {
+				continue;
+			}
+			for (int b = 0; b < 256; b++) {
+				counts[b + 1] += counts[b];
+			}
+			for (int i = 0; i < size; i++) {
+				int position = counts[(int) ((keysFrom[i] >>> shift) & 0xFF)]++;
+				keysTo[position] = keysFrom[i];
+				orderTo[position] = orderFrom[i];
+			}
+			long[] auxKeys = keysFrom;
+			keysFrom = keysTo;
+			keysTo = auxKeys;
+			int[] auxOrder = orderFrom;
+			orderFrom = orderTo;
+			orderTo = auxOrder;
+		}
+
+		if (orderFrom != this.ranking) {
+			System.arraycopy(orderFrom, 0, this.ranking, 0, size);
+		}
+		this.ranked = true;
 	}
 
 	/**
@@ -125,13 +320,120 @@ public class Population {
 	/**
 	 * Set individual at offset
 	 * 
+	 * The genes are copied into the population's storage and, as for a newly
+	 * created individual, its fitness is unknown until it's evaluated again
+	 * 
 	 * @param individual
 	 * @param offset
 	 * @return individual
 	 */
 	public void setIndividual(int offset, Individual individual) {
+		population[offset].copyGenes(individual);
+		population[offset].setFitness(-1);
 
-		population[offset] = new Individual(individual.getChromosome());
+		// Same genes, so the same route costs
+		Population from = individual.getOwner();
+		if (from != null && from.n == this.n && from.m == this.m) {
+			int row = population[offset].getRow();
+			int fromRow = individual.getRow();
+			System.arraycopy(from.routeCosts, fromRow * this.m, this.routeCosts, row * this.m, this.m);
+			System.arraycopy(from.dirtyRoutes, fromRow * this.dirtyWords, this.dirtyRoutes, row * this.dirtyWords,
+					this.dirtyWords);
+		}
+	}
+
+	/**
+	 * Reuse the route costs of a parent for the routes of a row that didn't
+	 * change: same vehicle span, same destinations in the same order and same
+	 * worker. Every other route is marked to be evaluated again.
+	 * 
+	 * @param row
+	 *            Row of this population whose genes were just written
+	 * @param parent
+	 *            Individual of an evaluated population the row comes from
+	 */
+	public void inheritRouteCosts(int row, Individual parent) {
+		Population from = parent.getOwner();
+		if (from == null || from.n != this.n || from.m != this.m) {
+			this.markAllRoutesDirty(row);
+			return;
+		}
+		Individual child = this.rows[row];
+		int fromRow = parent.getRow();
+		Arrays.fill(this.dirtyRoutes, row * this.dirtyWords, (row + 1) * this.dirtyWords, 0L);
+
+		for (int j = 0, k = 0, kp = 0; j < this.m; j++) {
+			int count = child.getGene(this.n + j);
+			int parentCount = parent.getGene(this.n + j);
+			boolean same = count == parentCount && k == kp && !from.isRouteDirty(fromRow, j)
+					&& child.getGene(this.n + this.m + j) == parent.getGene(this.n + this.m + j);
+			for (int i = k; same && i < k + count; i++) {
+				same = child.getGene(i) == parent.getGene(i);
+			}
+			if (same) {
+				this.routeCosts[row * this.m + j] = from.routeCosts[fromRow * this.m + j];
+			} else {
+				this.markRouteDirty(row, j);
+			}
+			k += count;
+			kp += parentCount;
+		}
+	}
+
+	/**
+	 * Mark a route of a row to be evaluated again
+	 * 
+	 * @param row
+	 * @param route
+	 *            Index of the route's vehicle
+	 */
+	public void markRouteDirty(int row, int route) {
+		this.dirtyRoutes[row * this.dirtyWords + (route >>> 6)] |= 1L << route;
+	}
+
+	/**
+	 * Mark every route of a row to be evaluated again
+	 * 
+	 * @param row
+	 */
+	public void markAllRoutesDirty(int row) {
+		Arrays.fill(this.dirtyRoutes, row * this.dirtyWords, (row + 1) * this.dirtyWords, -1L);
+	}
+
+	public boolean isRouteDirty(int row, int route) {
+		return (this.dirtyRoutes[row * this.dirtyWords + (route >>> 6)] & (1L << route)) != 0;
+	}
+
+	/**
+	 * Get the last calculated cost of a route, only valid if it's not dirty
+	 * 
+	 * @param row
+	 * @param route
+	 * @return cost in fixed-point
+	 */
+	public long getRouteCost(int row, int route) {
+		return this.routeCosts[row * this.m + route];
+	}
+
+	/**
+	 * Store the cost of a route and mark it as up to date
+	 * 
+	 * @param row
+	 * @param route
+	 * @param cost
+	 *            Cost in fixed-point
+	 */
+	public void setRouteCost(int row, int route, long cost) {
+		this.routeCosts[row * this.m + route] = cost;
+		this.dirtyRoutes[row * this.dirtyWords + (route >>> 6)] &= ~(1L << route);
+	}
+
+	/**
+	 * Forget the fitness of every individual, after their genes were modified
+	 */
+	public void resetFitness() {
+		Arrays.fill(this.fitness, -1);
+		this.ranked = false;
 	}
 
 	/**
@@ -151,7 +453,15 @@ public class Population {
 	 * @return void
 	 */
 	public void shuffle() {
-		Random rnd = new Random();
+		this.shuffle(new Xoshiro256(RandomStreams.entropy()));
+	}
+
+	/**
+	 * Shuffles the population in-place drawing from a generator
+	 * 
+	 * @param rnd
+	 */
+	public void shuffle(Random rnd) {
 		for (int i = population.length - 1; i > 0; i--) {
 			int index = rnd.nextInt(i + 1);
 			Individual a = population[index];
@@ -178,4 +488,13 @@ public class Population {
 		return this.n;
 	}
 
+	/**
+	 * Get the length of every chromosome, n + m + m
+	 * 
+	 * @return int
+	 */
+	public int getChromosomeLength(){
+		return this.n + this.m + this.m;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package genetic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the random numbers of a run: independent streams derived from a
+ * root seed
+ *
+ * Every island, thread or individual asks for the stream with its own
+ * number, so what it draws doesn't depend on the order in which the others
+ * run, and a run with the same seed and the same number of threads draws
+ * exactly the same numbers. Seeds are derived with the SplitMix64 finalizer,
+ * so consecutive stream numbers get unrelated generators. Streams can be
+ * derived again, for example a stream per individual of each island.
+ *
+ * The generators are Xoshiro256, each one must be used by a single thread.
+ *
+ * @author ms
+ *
+ */
+public class RandomStreams {
+	// Makes the seeds of runs started in the same nanosecond different
+	private static final AtomicLong ENTROPY = new AtomicLong(System.nanoTime());
+
+	private final long rootSeed;
+
+	/**
+	 * Initialize streams
+	 *
+	 * @param rootSeed
+	 *            Seed every stream is derived from
+	 */
+	public RandomStreams(long rootSeed) {
+		this.rootSeed = rootSeed;
+	}
+
+	/**
+	 * Get a seed for runs that don't need to be repeated
+	 *
+	 * @return seed
+	 */
+	public static long entropy() {
+		return mix(ENTROPY.getAndAdd(0x9E3779B97F4A7C15L), System.nanoTime());
+	}
+
+	/**
+	 * Derive the seed of a stream from a seed
+	 *
+	 * @param seed
+	 * @param stream
+	 *            Number of the stream
+	 * @return seed
+	 */
+	public static long mix(long seed, long stream) {
+		long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public long getRootSeed() {
+		return this.rootSeed;
+	}
+
+	/**
+	 * Get the seed of a stream
+	 *
+	 * @param stream
+	 *            Number of the stream
+	 * @return seed
+	 */
+	public long seed(long stream) {
+		return mix(this.rootSeed, stream);
+	}
+
+	/**
+	 * Get the streams derived from a stream
+	 *
+	 * @param stream
+	 *            Number of the stream
+	 * @return streams
+	 */
+	public RandomStreams derive(long stream) {
+		return new RandomStreams(this.seed(stream));
+	}
+
+	/**
+	 * Get a new generator for a stream, the same numbers every time
+	 *
+	 * @param stream
+	 *            Number of the stream
+	 * @return generator
+	 */
+	public Xoshiro256 stream(long stream) {
+		return new Xoshiro256(this.seed(stream));
+	}
+}
@@ -1,11 +1,9 @@
 package genetic;
 
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 
 import model.Product;
-import model.TimeRange;
 import model.Vehicle;
 import model.Worker;
 /**
@@ -20,25 +18,28 @@ import model.Worker;
 
 public class Route {
 	private Product route[];
-	private double distances[];
+	private int destinationsIndex[];
+	private int distances[];
+	private DistanceMatrix distanceMatrix;
+	private TimeModel timeModel;
 
 	private Product depot;
 	private Vehicle vehicle;
 	private Worker worker;
-	private TimeRange shift;
-	private TimeRange breakRange;
-	private LocalDateTime startTime;
-	private LocalDateTime endTime;
+	// Start and end of the route in minutes since the starting time
+	private int startTime;
+	private int endTime;
 	
 	private int otRate;
 	private int lateDeliveryPenalty;
 
 	private double distance;
-	private double cost;
-	private double penaltyCost;
-	private double distanceCost;
-	private double overtimeCost;
 	private double time;
+	// Costs in fixed-point, see TimeModel.COST_SCALE
+	private long cost;
+	private long penaltyCost;
+	private long distanceCost;
+	private long overtimeCost;
 
 	/**
 	 * Initialize Route
@@ -51,9 +52,13 @@ public class Route {
 	 * 						The worker assigned to the route
 	 * @param depot
 	 * 						The origin point of the worker
+	 * @param distanceMatrix
+	 * 						Precomputed distances between destinations and depot
+	 * @param timeModel
+	 * 						Deadlines, shift and break in minutes since the starting time
 	 * 
 	 */
-	public Route(int[] destinationsIndex, ArrayList<Product> products, Vehicle vehicle, Worker worker, Product depot, TimeRange shift, TimeRange breakRange, LocalDateTime curTime, int overtime, int lateDeliveryPenalty) {
+	public Route(int[] destinationsIndex, ArrayList<Product> products, Vehicle vehicle, Worker worker, Product depot, DistanceMatrix distanceMatrix, TimeModel timeModel, int overtime, int lateDeliveryPenalty) {
 
 		this.distance = 0;
 		this.cost = 0;
@@ -62,7 +67,8 @@ public class Route {
 		// Create route
 		if(destinationsIndex != null) {
 			this.route = new Product[destinationsIndex.length];
-			this.distances = new double[destinationsIndex.length];
+			this.destinationsIndex = destinationsIndex;
+			this.distances = new int[destinationsIndex.length];
 			
 			for (int i = 0; i < route.length; i++) {
 				this.route[i] = products.get(destinationsIndex[i]);
@@ -74,11 +80,10 @@ public class Route {
 		}
 
 		this.depot = new Product(depot);
+		this.distanceMatrix = distanceMatrix;
+		this.timeModel = timeModel;
 		this.vehicle = new Vehicle(vehicle);
 		this.worker = new Worker(worker);
-		this.shift = new TimeRange(shift);
-		this.breakRange = new TimeRange(breakRange);
-		this.startTime = curTime;
 		this.otRate = overtime;
 		this.lateDeliveryPenalty = lateDeliveryPenalty;
 	}
@@ -95,7 +100,7 @@ public class Route {
 	 * 						The origin point of the vehicle
 	 * 
 	 */
-	public Route(ArrayList<Product> products, Vehicle vehicle, Worker worker, Product depot, TimeRange shift, TimeRange breakRange, LocalDateTime curTime, int overtime, int lateDeliveryPenalty) {
+	public Route(ArrayList<Product> products, Vehicle vehicle, Worker worker, Product depot, TimeModel timeModel, int overtime, int lateDeliveryPenalty) {
 
 		this.distance = 0;
 		this.cost = 0;
@@ -103,15 +108,13 @@ public class Route {
 		this.route = null;
 
 		this.depot = new Product(depot);
+		this.timeModel = timeModel;
 		this.vehicle = new Vehicle(vehicle);
 		this.worker = new Worker(worker);
-		this.shift = new TimeRange(shift);
-		this.breakRange = new TimeRange(breakRange);
-		this.startTime = curTime;
 		this.otRate = overtime;
 		this.lateDeliveryPenalty = lateDeliveryPenalty;
 
-		this.endTime = curTime;
+		this.endTime = 0;
 	}
 
 	public Vehicle getVehicle() {
@@ -137,10 +140,10 @@ public class Route {
 		// Loop over cities in route and calculate route distance
 		double totalDistance = 0;
 		
-		this.distances[0] = this.depot.distanceFrom(this.route[0]);
+		this.distances[0] = this.distanceMatrix.distance(this.distanceMatrix.getDepot(), this.destinationsIndex[0]);
 		totalDistance += this.distances[0];
 		for (int i = 0; i + 1 < this.route.length; i++) {
-			this.distances[i+1] = this.route[i].distanceFrom(this.route[i + 1]);
+			this.distances[i+1] = this.distanceMatrix.distance(this.destinationsIndex[i], this.destinationsIndex[i + 1]);
 			totalDistance += this.distances[i+1];
 		}
 
@@ -155,6 +158,15 @@ public class Route {
 	 * @return cost The route's total cost
 	 */
 	public double getCost() {
+		return (double) this.getFixedCost() / TimeModel.COST_SCALE;
+	}
+
+	/**
+	 * Get route cost in fixed-point
+	 * 
+	 * @return cost The route's total cost multiplied by TimeModel.COST_SCALE
+	 */
+	long getFixedCost() {
 		if (this.cost > 0) {
 			return this.cost;
 		}
@@ -163,45 +175,42 @@ public class Route {
 		}
 
 		// Get distance cost
-		double distanceCost = this.getDistance() * vehicle.getCostPerKm();
+		int distance = (int) this.getDistance();
+		long distanceCost = (long) distance * vehicle.getCostPerKm() * TimeModel.COST_SCALE;
 
 		// Get route's end time
 		// Consider break range -> can change start/end time
-		int hours = (int) this.getTime();
-		int minutes = (int) Math.round((this.getTime() - hours) * 60);
-		this.endTime = this.startTime;
-		this.endTime = this.startTime.plusHours(hours).plusMinutes(minutes);
+		int duration = TimeModel.travelMinutes(distance, vehicle.getSpeed());
+		this.startTime = 0;
+		this.endTime = duration;
 		
-		if(!worker.hadBreak() && !breakRange.isPastRange(this.startTime)){
-			TimeRange endRange = new TimeRange(breakRange.getStart(), breakRange.getEnd().minusHours(1));
-			if(endRange.isPastRange(endTime)){
-				this.startTime = breakRange.getStart().plusHours(1);
-				this.endTime = this.startTime.plusHours(hours).plusMinutes(minutes);
+		if(!worker.hadBreak() && this.startTime <= timeModel.getBreakEnd()){
+			// Routes ending past the break's first hour start after it
+			if(this.endTime > timeModel.getBreakEnd() - 60){
+				this.startTime = timeModel.getBreakStart() + 60;
+				this.endTime = this.startTime + duration;
 			}	
 		}
 
-		// Get overtime cost
-		double otCost = 0;
-		if(shift.isPastRange(endTime)){
-			otCost = this.otRate * shift.hoursPastRange(endTime);
+		// Get overtime cost, a sixtieth of the hourly rate per minute
+		long otCost = 0;
+		if(this.endTime > timeModel.getShiftEnd()){
+			otCost = (long) this.otRate * (this.endTime - timeModel.getShiftEnd());
 		}
 
 		// Get late delivery penalty cost
-		double lateCost = 0;
-		double arrivalTime, aHours, aMinutes;
-		LocalDateTime aTime = this.startTime;
+		long lateCost = 0;
+		int aTime = this.startTime;
+		int deadline, hoursDiff;
 		for(int i=0; i < distances.length; i++){ 
-			arrivalTime = distances[i]/this.vehicle.getSpeed();
-			aHours = (int) arrivalTime;
-			aMinutes = Math.round((arrivalTime - aHours)*60);
-			aTime = aTime.plusHours((long)aHours).plusMinutes((long)aMinutes);
-			if(aTime.isAfter(this.route[i].getDeadline())){
-				long differenceInMin = ChronoUnit.MINUTES.between(this.route[i].getDeadline(), aTime);
-				int hoursDiff = (int) Math.ceil ((double)differenceInMin / 60);
-				lateCost += hoursDiff * lateDeliveryPenalty;
+			aTime += TimeModel.travelMinutes(distances[i], vehicle.getSpeed());
+			deadline = timeModel.getDeadline(this.destinationsIndex[i]);
+			if(aTime > deadline){
+				// Every started hour is charged
+				hoursDiff = (aTime - deadline + 59) / 60;
+				lateCost += (long) hoursDiff * lateDeliveryPenalty * TimeModel.COST_SCALE;
 			}
 		}
-		//System.out.println("Calc cost " + distanceCost + " "+ otCost + " " + lateCost);
 
 		this.cost = distanceCost + otCost + lateCost;
 		this.penaltyCost = lateCost;
@@ -237,40 +246,52 @@ public class Route {
 	 * @return cost The route's total penalty cost
 	 */
 	public double getPenaltyCost(){
+		return (double) this.getFixedPenaltyCost() / TimeModel.COST_SCALE;
+	}
+
+	public double getOvertimeCost(){
+		return (double) this.getFixedOvertimeCost() / TimeModel.COST_SCALE;
+	}
+
+	public double getDistanceCost(){
+		return (double) this.getFixedDistanceCost() / TimeModel.COST_SCALE;
+	}
+
+	long getFixedPenaltyCost(){
 		if (this.penaltyCost > 0) {
 			return this.penaltyCost;
 		}
 		if (this.route == null) {
 			return 0;
 		}
-		this.getCost();
+		this.getFixedCost();
 		return penaltyCost;
 	}
 
-	public double getOvertimeCost(){
+	long getFixedOvertimeCost(){
 		if (this.overtimeCost > 0) {
 			return this.overtimeCost;
 		}
 		if (this.route == null) {
 			return 0;
 		}
-		this.getCost();
+		this.getFixedCost();
 		return overtimeCost;
 	}
 
-	public double getDistanceCost(){
+	long getFixedDistanceCost(){
 		if (this.distanceCost > 0) {
 			return this.distanceCost;
 		}
 		if (this.route == null) {
 			return 0;
 		}
-		this.getCost();
+		this.getFixedCost();
 		return distanceCost;
 	}
 
 	public LocalDateTime getEndTime(){
-		return this.endTime;
+		return this.timeModel.toDateTime(this.endTime);
 	}
 
 	public String toString() {
@@ -1,11 +1,9 @@
 package genetic;
 
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 
 import model.Product;
-import model.TimeRange;
 import model.Vehicle;
 import model.Worker;
 
@@ -18,19 +16,24 @@ public class Routes {
   private double totalDistanceCost;
   private double totalPenaltyCost;
   
-  public Routes(Individual individual, ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker>workers, Product depot, TimeRange shift, TimeRange breakRange, LocalDateTime curTime, int overtimeBike, int overtimeCar, int lateDeliveryPenalty){
+  /**
+   * Builds every route of an individual with its details, to report a
+   * solution. To evaluate individuals during the evolution use Evaluator.
+   */
+  public Routes(Individual individual, ArrayList<Product> products, ArrayList<Vehicle> vehicles, ArrayList<Worker>workers, Product depot, DistanceMatrix distanceMatrix, TimeModel timeModel, int overtimeBike, int overtimeCar, int lateDeliveryPenalty){
 
     routes = new ArrayList<>();
     int n = products.size();
     int m = vehicles.size();
 
-    double totalDistance = 0, totalTime = 0, totalCost = 0, totalPenaltyCost = 0, totalOvertimeCost = 0, totalDistanceCost = 0;
+    double totalDistance = 0, totalTime = 0;
+    // Costs are summed in fixed-point, see TimeModel.COST_SCALE
+    long totalCost = 0, totalPenaltyCost = 0, totalOvertimeCost = 0, totalDistanceCost = 0;
 
     // Loop the individual's chromosome to generate m Routes
-    int chromosome[] =  individual.getChromosome();
     int l, ot;
     for (int i = n, j=0, k=0; i < n+m; i++, j++){
-      l = chromosome[i+m];
+      l = individual.getGene(i+m);
       if(vehicles.get(j).getType() == 0) {
         ot = overtimeBike;
       }
@@ -38,32 +41,32 @@ public class Routes {
         ot = overtimeCar;
       }
 
-      if(chromosome[i] == 0) {
-        routes.add(new Route(products, vehicles.get(j), workers.get(l), depot, shift, breakRange, curTime, ot, lateDeliveryPenalty));
+      if(individual.getGene(i) == 0) {
+        routes.add(new Route(products, vehicles.get(j), workers.get(l), depot, timeModel, ot, lateDeliveryPenalty));
       }
       else{
-        int aux[] = new int[chromosome[i]];
-        for(int x=0; x<chromosome[i]; x++){
-          aux[x] = chromosome[k];
+        int aux[] = new int[individual.getGene(i)];
+        for(int x=0; x<aux.length; x++){
+          aux[x] = individual.getGene(k);
           k++;
         }
-        routes.add(new Route(aux, products, vehicles.get(j), workers.get(l), depot, shift, breakRange, curTime, ot, lateDeliveryPenalty));
+        routes.add(new Route(aux, products, vehicles.get(j), workers.get(l), depot, distanceMatrix, timeModel, ot, lateDeliveryPenalty));
         
         totalDistance += routes.get(j).getDistance();
         totalTime += routes.get(j).getTime();
-        totalCost += routes.get(j).getCost();
-        totalPenaltyCost += routes.get(j).getPenaltyCost();
-        totalOvertimeCost += routes.get(j).getOvertimeCost();
-        totalDistanceCost += routes.get(j).getDistanceCost();
+        totalCost += routes.get(j).getFixedCost();
+        totalPenaltyCost += routes.get(j).getFixedPenaltyCost();
+        totalOvertimeCost += routes.get(j).getFixedOvertimeCost();
+        totalDistanceCost += routes.get(j).getFixedDistanceCost();
       }
     }
 
     this.totalDistance = totalDistance;
     this.totalTime = totalTime;
-    this.totalCost = totalCost;
-    this.totalPenaltyCost = totalPenaltyCost;
-    this.totalOvertimeCost = totalOvertimeCost;
-    this.totalDistanceCost = totalDistanceCost;
+    this.totalCost = (double) totalCost / TimeModel.COST_SCALE;
+    this.totalPenaltyCost = (double) totalPenaltyCost / TimeModel.COST_SCALE;
+    this.totalOvertimeCost = (double) totalOvertimeCost / TimeModel.COST_SCALE;
+    this.totalDistanceCost = (double) totalDistanceCost / TimeModel.COST_SCALE;
   }
 
   public double getDistance() {
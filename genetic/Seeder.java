@@ -0,0 +1,461 @@
+package genetic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.Product;
+import model.SpatialIndex;
+
+/**
+ * Constructive heuristics creating part of the initial population instead of
+ * random permutations: Clarke-Wright savings, angular sweep around the depot
+ * and nearest neighbor in deadline order
+ *
+ * Each heuristic builds routes of at most the capacity of a vehicle drawn at
+ * random, so some individuals are built for bikes and some for cars. The
+ * routes are then packed into the vehicles, cheapest per km first, splitting
+ * a route only when no vehicle has room for all of it, so every chromosome is
+ * valid. Ties are broken at random and the sweep starts at a random angle, so
+ * the seeded individuals differ from each other.
+ *
+ * Routes are open paths from the depot, so the saving of joining a route
+ * ending at i with one starting at j is d(depot, j) - d(i, j), only
+ * calculated for the nearest neighbors of each destination.
+ *
+ * @author ms
+ *
+ */
+public class Seeder {
+	public enum Method {
+		SAVINGS, SWEEP, NEAREST_DEADLINE
+	}
+
+	// Neighbors of each destination whose savings are considered
+	private static final int SAVINGS_NEIGHBORS = 30;
+
+	private DistanceMatrix distanceMatrix;
+	private double fraction;
+	private int n;
+	private int m;
+	private int numWorkers;
+	private int depot;
+	private int capacity[];
+	// Vehicles cheapest per km first, larger first among the same cost
+	private int vehicleOrder[];
+	// Angle of each destination around the depot
+	private double angle[];
+	// Joins (i, j) by decreasing saving, i in the high bits and j in the low ones
+	private long joins[];
+	private int savings[];
+
+	/**
+	 * Initialize seeder, the savings are calculated once
+	 *
+	 * @param evaluator
+	 *            The evaluation kernel of the problem
+	 * @param index
+	 *            Spatial index over the destinations, in chromosome order
+	 * @param depot
+	 *            The origin point of every route
+	 * @param fraction
+	 *            Fraction of the initial population seeded
+	 */
+	public Seeder(Evaluator evaluator, SpatialIndex index, Product depot, double fraction) {
+		this.distanceMatrix = evaluator.getDistanceMatrix();
+		this.n = evaluator.getNumDestinations();
+		this.m = evaluator.getNumVehicles();
+		this.numWorkers = evaluator.getNumWorkers();
+		this.depot = this.distanceMatrix.getDepot();
+		if (index.size() != this.n) {
+			throw new IllegalArgumentException("The index must hold the " + this.n + " destinations");
+		}
+		this.setFraction(fraction);
+
+		this.capacity = new int[this.m];
+		Integer order[] = new Integer[this.m];
+		for (int j = 0; j < this.m; j++) {
+			this.capacity[j] = evaluator.getCapacity(j);
+			order[j] = j;
+		}
+		Arrays.sort(order, (a, b) -> evaluator.getCostPerKm(a) != evaluator.getCostPerKm(b)
+				? Integer.compare(evaluator.getCostPerKm(a), evaluator.getCostPerKm(b))
+				: Integer.compare(this.capacity[b], this.capacity[a]));
+		this.vehicleOrder = new int[this.m];
+		for (int j = 0; j < this.m; j++) {
+			this.vehicleOrder[j] = order[j];
+		}
+
+		this.angle = new double[this.n];
+		for (int i = 0; i < this.n; i++) {
+			this.angle[i] = Math.atan2(index.getY(i) - depot.getY(), index.getX(i) - depot.getX());
+		}
+
+		// Positive savings in both directions between each destination and its neighbors
+		int k = Math.max(0, Math.min(SAVINGS_NEIGHBORS, this.n - 1));
+		int neighbors[] = index.neighborLists(k);
+		long candidates[] = new long[2 * this.n * k];
+		int count = 0;
+		for (int i = 0; i < this.n; i++) {
+			for (int p = i * k; p < (i + 1) * k; p++) {
+				int j = neighbors[p];
+				int saving = this.saving(i, j);
+				if (saving > 0) {
+					candidates[count++] = ((long) -saving << 40) | ((long) i << 20) | j;
+				}
+				// j's own list may not hold i, keep the join from j too
+				saving = this.saving(j, i);
+				if (saving > 0) {
+					candidates[count++] = ((long) -saving << 40) | ((long) j << 20) | i;
+				}
+			}
+		}
+		Arrays.sort(candidates, 0, count);
+		this.joins = new long[count];
+		this.savings = new int[count];
+		int unique = 0;
+		for (int c = 0; c < count; c++) {
+			if (unique == 0 || candidates[c] != candidates[c - 1]) {
+				this.savings[unique] = (int) -(candidates[c] >> 40);
+				this.joins[unique++] = candidates[c] & ((1L << 40) - 1);
+			}
+		}
+		this.joins = Arrays.copyOf(this.joins, unique);
+		this.savings = Arrays.copyOf(this.savings, unique);
+	}
+
+	/**
+	 * Distance saved by going from the end of a route at i to the start of
+	 * another at j instead of from the depot
+	 */
+	private int saving(int i, int j) {
+		return this.distanceMatrix.distance(this.depot, j) - this.distanceMatrix.distance(i, j);
+	}
+
+	/**
+	 * Set the fraction of the initial population seeded
+	 *
+	 * @param fraction
+	 *            Between 0 and 1
+	 */
+	public void setFraction(double fraction) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("Fraction must be between 0 and 1");
+		}
+		this.fraction = fraction;
+	}
+
+	public double getFraction() {
+		return this.fraction;
+	}
+
+	/**
+	 * Replace the first rows of a new population with seeded individuals,
+	 * using the three heuristics in turn
+	 *
+	 * @param population
+	 *            The population, not evaluated yet
+	 * @param streams
+	 *            Streams of the rows, each row has its own so the result
+	 *            doesn't depend on the threads
+	 * @param pool
+	 *            Pool to build individuals in parallel, null to build them on
+	 *            the calling thread
+	 */
+	public void seed(Population population, RandomStreams streams, ForkJoinPool pool) {
+		int count = Math.min(population.size(), (int) Math.ceil(this.fraction * population.size()));
+		if (pool != null && count > 1) {
+			pool.invoke(new SeedTask(population, streams, 0, count));
+		} else {
+			for (int row = 0; row < count; row++) {
+				this.seed(population, streams, row);
+			}
+		}
+	}
+
+	private void seed(Population population, RandomStreams streams, int row) {
+		Random random = streams.stream(row);
+		Method method = Method.values()[row % Method.values().length];
+		int chromosome[] = this.createChromosome(method, random);
+		Individual individual = population.getRow(row);
+		individual.writeGenes(0, chromosome, chromosome.length);
+		population.markAllRoutesDirty(row);
+	}
+
+	/**
+	 * Build a valid chromosome with a heuristic
+	 *
+	 * @param method
+	 * @param random
+	 *            Generator for the ties, the route size and the workers
+	 * @return chromosome
+	 */
+	public int[] createChromosome(Method method, Random random) {
+		// Routes as long as the capacity of a random vehicle
+		int limit = this.m == 0 ? 1 : this.capacity[random.nextInt(this.m)];
+		List<int[]> routes;
+		switch (method) {
+		case SAVINGS:
+			routes = this.savings(limit, random);
+			break;
+		case SWEEP:
+			routes = this.sweep(limit, random);
+			break;
+		default:
+			routes = this.nearestDeadline(limit, random);
+			break;
+		}
+		return this.pack(routes, random);
+	}
+
+	/**
+	 * Clarke-Wright savings: start with a route per destination and join the
+	 * end of one route with the start of another by decreasing saving while
+	 * the joined route fits
+	 */
+	private List<int[]> savings(int limit, Random random) {
+		int next[] = new int[this.n];
+		int previous[] = new int[this.n];
+		// Other end of the route of each end, and size of the route kept at both ends
+		int otherEnd[] = new int[this.n];
+		int size[] = new int[this.n];
+		for (int i = 0; i < this.n; i++) {
+			next[i] = -1;
+			previous[i] = -1;
+			otherEnd[i] = i;
+			size[i] = 1;
+		}
+
+		long joins[] = this.joins.clone();
+		for (int from = 0, to; from < joins.length; from = to) {
+			// Shuffle the joins with the same saving
+			for (to = from + 1; to < joins.length && this.savings[to] == this.savings[from]; to++) {
+				int other = from + random.nextInt(to - from + 1);
+				long aux = joins[to];
+				joins[to] = joins[other];
+				joins[other] = aux;
+			}
+		}
+
+		for (long join : joins) {
+			int i = (int) (join >>> 20);
+			int j = (int) (join & ((1 << 20) - 1));
+			// i must end a route, j must start another one
+			if (next[i] != -1 || previous[j] != -1 || otherEnd[i] == j || size[i] + size[j] > limit) {
+				continue;
+			}
+			int start = otherEnd[i];
+			int end = otherEnd[j];
+			next[i] = j;
+			previous[j] = i;
+			otherEnd[start] = end;
+			otherEnd[end] = start;
+			size[start] = size[end] = size[i] + size[j];
+		}
+
+		List<int[]> routes = new ArrayList<int[]>();
+		for (int i = 0; i < this.n; i++) {
+			if (previous[i] == -1) {
+				int route[] = new int[size[i]];
+				for (int p = 0, d = i; d != -1; d = next[d]) {
+					route[p++] = d;
+				}
+				routes.add(route);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Sweep: sort the destinations by angle around the depot, starting at a
+	 * random angle in a random direction, cut them in consecutive routes and
+	 * visit each route from the depot outwards
+	 */
+	private List<int[]> sweep(int limit, Random random) {
+		double start = random.nextDouble() * 2 * Math.PI;
+		boolean clockwise = random.nextBoolean();
+		long keys[] = new long[this.n];
+		for (int i = 0; i < this.n; i++) {
+			double turn = (clockwise ? start - this.angle[i] : this.angle[i] - start) % (2 * Math.PI);
+			if (turn < 0) {
+				turn += 2 * Math.PI;
+			}
+			// Angle in the high bits, a random tie-breaker and the destination in the low ones
+			keys[i] = ((long) (turn * (1 << 20)) << 40) | ((long) random.nextInt(1 << 20) << 20) | i;
+		}
+		Arrays.sort(keys);
+
+		List<int[]> routes = new ArrayList<int[]>();
+		for (int from = 0; from < this.n; from += limit) {
+			int count = Math.min(limit, this.n - from);
+			long route[] = new long[count];
+			for (int p = 0; p < count; p++) {
+				int d = (int) (keys[from + p] & ((1 << 20) - 1));
+				route[p] = ((long) this.distanceMatrix.distance(this.depot, d) << 20) | d;
+			}
+			Arrays.sort(route);
+			int destinations[] = new int[count];
+			for (int p = 0; p < count; p++) {
+				destinations[p] = (int) (route[p] & ((1 << 20) - 1));
+			}
+			routes.add(destinations);
+		}
+		return routes;
+	}
+
+	/**
+	 * Nearest neighbor in deadline order: each route starts at the pending
+	 * destination with the earliest deadline and goes on to the nearest of
+	 * the next pending ones by deadline
+	 */
+	private List<int[]> nearestDeadline(int limit, Random random) {
+		// Destinations are sorted by deadline, look at twice a route ahead
+		int window = 2 * limit;
+		boolean visited[] = new boolean[this.n];
+		int first = 0;
+		List<int[]> routes = new ArrayList<int[]>();
+		while (first < this.n) {
+			int route[] = new int[Math.min(limit, this.n)];
+			int count = 0;
+			int current = first;
+			while (current != -1) {
+				visited[current] = true;
+				route[count++] = current;
+				while (first < this.n && visited[first]) {
+					first++;
+				}
+				if (count == limit) {
+					break;
+				}
+
+				// Nearest among the window, ties at random
+				int nearest = -1;
+				int best = Integer.MAX_VALUE;
+				int ties = 0;
+				for (int i = first, seen = 0; i < this.n && seen < window; i++) {
+					if (visited[i]) {
+						continue;
+					}
+					seen++;
+					int distance = this.distanceMatrix.distance(current, i);
+					if (distance < best) {
+						best = distance;
+						nearest = i;
+						ties = 1;
+					} else if (distance == best && random.nextInt(++ties) == 0) {
+						nearest = i;
+					}
+				}
+				current = nearest;
+			}
+			routes.add(Arrays.copyOf(route, count));
+		}
+		return routes;
+	}
+
+	/**
+	 * Pack routes into the vehicles, longest routes first: an empty vehicle
+	 * that fits the route with the least room left, or else the vehicle with
+	 * the least room that still fits it after its other routes, or else the
+	 * vehicle with the most room takes the start of the route and the rest is
+	 * packed again
+	 */
+	private int[] pack(List<int[]> routes, Random random) {
+		routes.sort((a, b) -> Integer.compare(b.length, a.length));
+		Deque<int[]> pending = new ArrayDeque<int[]>(routes);
+		int load[] = new int[this.m];
+		int assigned[][] = new int[this.m][];
+		for (int j = 0; j < this.m; j++) {
+			assigned[j] = new int[this.capacity[j]];
+		}
+
+		while (!pending.isEmpty()) {
+			int route[] = pending.poll();
+			int chosen = -1;
+			for (int j : this.vehicleOrder) {
+				if (load[j] == 0 && this.capacity[j] >= route.length
+						&& (chosen == -1 || this.capacity[j] < this.capacity[chosen])) {
+					chosen = j;
+				}
+			}
+			if (chosen == -1) {
+				for (int j : this.vehicleOrder) {
+					int room = this.capacity[j] - load[j];
+					if (room >= route.length && (chosen == -1 || room < this.capacity[chosen] - load[chosen])) {
+						chosen = j;
+					}
+				}
+			}
+			int count = route.length;
+			if (chosen == -1) {
+				for (int j : this.vehicleOrder) {
+					if (chosen == -1 || this.capacity[j] - load[j] > this.capacity[chosen] - load[chosen]) {
+						chosen = j;
+					}
+				}
+				count = this.capacity[chosen] - load[chosen];
+				if (count == 0) {
+					throw new IllegalStateException("The vehicles can't carry the " + this.n + " destinations");
+				}
+				pending.push(Arrays.copyOfRange(route, count, route.length));
+			}
+			System.arraycopy(route, 0, assigned[chosen], load[chosen], count);
+			load[chosen] += count;
+		}
+
+		// Routes in vehicle order, then the loads, then a random worker for each vehicle
+		int chromosome[] = new int[this.n + 2 * this.m];
+		for (int j = 0, k = 0; j < this.m; j++) {
+			System.arraycopy(assigned[j], 0, chromosome, k, load[j]);
+			k += load[j];
+			chromosome[this.n + j] = load[j];
+		}
+		int workers[] = new int[this.numWorkers];
+		for (int l = 0; l < this.numWorkers; l++) {
+			workers[l] = l;
+		}
+		for (int j = 0; j < this.m; j++) {
+			int other = j + random.nextInt(this.numWorkers - j);
+			int aux = workers[j];
+			workers[j] = workers[other];
+			workers[other] = aux;
+			chromosome[this.n + this.m + j] = workers[j];
+		}
+		return chromosome;
+	}
+
+	private class SeedTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 2;
+
+		private final Population population;
+		private final RandomStreams streams;
+		private final int from;
+		private final int to;
+
+		SeedTask(Population population, RandomStreams streams, int from, int to) {
+			this.population = population;
+			this.streams = streams;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= THRESHOLD) {
+				for (int row = this.from; row < this.to; row++) {
+					seed(this.population, this.streams, row);
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new SeedTask(this.population, this.streams, this.from, middle),
+					new SeedTask(this.population, this.streams, middle, this.to));
+		}
+	}
+}
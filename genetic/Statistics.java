@@ -0,0 +1,158 @@
+package genetic;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics and tests to compare the results of two experiments
+ *
+ * @author ms
+ *
+ */
+public class Statistics {
+	// Two-sided 95% critical values of Student's t for 1 to 30 degrees of freedom
+	private static final double T_975[] = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060,
+			2.056, 2.052, 2.048, 2.045, 2.042 };
+	// Beyond 30 degrees of freedom, interpolated linearly in 1 / degrees
+	private static final int T_975_DEGREES[] = { 30, 40, 60, 80, 100, 120 };
+	private static final double T_975_LARGE[] = { 2.042, 2.021, 2.000, 1.990, 1.984, 1.980 };
+	private static final double Z_975 = 1.960;
+
+	private Statistics() {
+	}
+
+	public static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	public static double median(double[] values) {
+		double sorted[] = values.clone();
+		Arrays.sort(sorted);
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+
+	/**
+	 * Sample standard deviation
+	 *
+	 * @param values
+	 * @return standard deviation, 0 with less than 2 values
+	 */
+	public static double standardDeviation(double[] values) {
+		if (values.length < 2) {
+			return 0;
+		}
+		double mean = mean(values);
+		double sum = 0;
+		for (double value : values) {
+			sum += (value - mean) * (value - mean);
+		}
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	/**
+	 * Half width of the 95% confidence interval of the mean, using Student's t
+	 *
+	 * @param values
+	 * @return half width, the interval is mean +- half width
+	 */
+	public static double confidenceInterval95(double[] values) {
+		if (values.length < 2) {
+			return 0;
+		}
+		double t = t975(values.length - 1);
+		return t * standardDeviation(values) / Math.sqrt(values.length);
+	}
+
+	/**
+	 * Two-sided 95% critical value of Student's t, within 0.001 of the exact
+	 * quantile. Above 120 degrees of freedom it tends to the normal 1.96
+	 *
+	 * @param degrees
+	 *            Degrees of freedom, at least 1
+	 * @return t
+	 */
+	static double t975(int degrees) {
+		if (degrees <= T_975.length) {
+			return T_975[degrees - 1];
+		}
+		int last = T_975_DEGREES.length - 1;
+		if (degrees >= T_975_DEGREES[last]) {
+			return Z_975 + (T_975_LARGE[last] - Z_975) * T_975_DEGREES[last] / degrees;
+		}
+		int i = 1;
+		while (T_975_DEGREES[i] < degrees) {
+			i++;
+		}
+		double fraction = (1.0 / T_975_DEGREES[i - 1] - 1.0 / degrees)
+				/ (1.0 / T_975_DEGREES[i - 1] - 1.0 / T_975_DEGREES[i]);
+		return T_975_LARGE[i - 1] + fraction * (T_975_LARGE[i] - T_975_LARGE[i - 1]);
+	}
+
+	/**
+	 * Mann-Whitney U test, two-sided, with the normal approximation corrected
+	 * for ties
+	 *
+	 * @param a
+	 * @param b
+	 * @return {U of a, p-value}
+	 */
+	public static double[] mannWhitney(double[] a, double[] b) {
+		int n1 = a.length;
+		int n2 = b.length;
+		int n = n1 + n2;
+		double all[][] = new double[n][];
+		for (int i = 0; i < n1; i++) {
+			all[i] = new double[] { a[i], 0 };
+		}
+		for (int i = 0; i < n2; i++) {
+			all[n1 + i] = new double[] { b[i], 1 };
+		}
+		Arrays.sort(all, (x, y) -> Double.compare(x[0], y[0]));
+
+		// Average ranks of ties
+		double rankSumA = 0;
+		double tieCorrection = 0;
+		for (int i = 0; i < n;) {
+			int j = i;
+			while (j < n && all[j][0] == all[i][0]) {
+				j++;
+			}
+			double rank = (i + 1 + j) / 2.0;
+			for (int k = i; k < j; k++) {
+				if (all[k][1] == 0) {
+					rankSumA += rank;
+				}
+			}
+			double ties = j - i;
+			tieCorrection += ties * ties * ties - ties;
+			i = j;
+		}
+
+		double u = rankSumA - n1 * (n1 + 1) / 2.0;
+		double mean = n1 * (double) n2 / 2;
+		double variance = n1 * (double) n2 / 12 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+		if (variance <= 0) {
+			return new double[] { u, 1 };
+		}
+		// Continuity correction
+		double z = (Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+		double p = Math.min(1, 2 * (1 - normalCdf(Math.max(0, z))));
+		return new double[] { u, p };
+	}
+
+	/**
+	 * Standard normal cumulative distribution, Abramowitz and Stegun 7.1.26
+	 */
+	private static double normalCdf(double z) {
+		double x = Math.abs(z) / Math.sqrt(2);
+		double t = 1 / (1 + 0.3275911 * x);
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027
+				+ t * 1.061405429)))) * Math.exp(-x * x);
+		return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+	}
+}
@@ -0,0 +1,231 @@
+package genetic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per generation record of where the time goes: time spent in crossover,
+ * mutation, evaluation, local search and ranking, evaluations per second,
+ * bytes allocated and best, average and worst cost
+ *
+ * The algorithm reports each phase with record and closes the generation in
+ * endGeneration, both from the thread running the evolution loop. Records are
+ * handed in batches to a background thread that writes them as CSV lines
+ * through a buffered writer, so the loop only pays for reading the clock and
+ * keeping a record, and the writer wakes up once per batch.
+ *
+ * Allocated bytes are the ones allocated by the thread running the loop,
+ * allocations of the threads evaluating in parallel are not counted.
+ *
+ * @author ms
+ *
+ */
+public class Telemetry implements AutoCloseable {
+	/**
+	 * Columns of the CSV file
+	 */
+	public static final String HEADER = "generation,crossover-ms,mutation-ms,evaluation-ms,local-search-ms,ranking-ms,"
+			+ "evaluations-per-second,allocated-bytes,best-cost,average-cost,worst-cost";
+	// Records handed to the writer at once
+	private static final int BATCH = 256;
+
+	/**
+	 * Phase of a generation
+	 */
+	public enum Phase {
+		CROSSOVER, MUTATION, EVALUATION, LOCAL_SEARCH, RANKING
+	}
+
+	private final BufferedWriter writer;
+	private final ExecutorService executor;
+	private volatile IOException error;
+
+	private final com.sun.management.ThreadMXBean threads;
+	private long allocatedBefore = -1;
+	private long phaseNanos[] = new long[Phase.values().length];
+	private long evaluations = 0;
+	private Record batch[] = new Record[BATCH];
+	private int batched = 0;
+
+	/**
+	 * Initialize telemetry writing to a file
+	 *
+	 * @param path
+	 *            CSV file, replaced if it exists
+	 * @throws IOException
+	 */
+	public Telemetry(Path path) throws IOException {
+		this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		this.writer.write(HEADER);
+		this.writer.newLine();
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "telemetry-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			this.threads = (com.sun.management.ThreadMXBean) bean;
+			this.threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			this.threads = null;
+		}
+	}
+
+	/**
+	 * Add the time spent in a phase of the current generation
+	 *
+	 * @param phase
+	 * @param nanos
+	 *            Time spent, from System.nanoTime
+	 */
+	public void record(Phase phase, long nanos) {
+		if (this.allocatedBefore < 0) {
+			this.allocatedBefore = this.allocatedBytes();
+		}
+		this.phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Add the time spent evaluating individuals in the current generation
+	 *
+	 * @param nanos
+	 *            Time spent, from System.nanoTime
+	 * @param count
+	 *            Number of individuals evaluated
+	 */
+	public void recordEvaluation(long nanos, int count) {
+		this.record(Phase.EVALUATION, nanos);
+		this.evaluations += count;
+	}
+
+	/**
+	 * Close the current generation and queue its record
+	 *
+	 * @param generation
+	 * @param population
+	 *            The evaluated population, already ranked
+	 * @throws IllegalStateException
+	 *             If a previous record couldn't be written
+	 */
+	public void endGeneration(int generation, Population population) {
+		if (this.error != null) {
+			throw new IllegalStateException("Couldn't write telemetry", this.error);
+		}
+		double best = 1 / population.getFittest(0).getFitness();
+		double worst = 1 / population.getFittest(population.size() - 1).getFitness();
+		double sum = 0;
+		for (Individual individual : population.getIndividuals()) {
+			sum += 1 / individual.getFitness();
+		}
+		long allocatedAfter = this.allocatedBytes();
+		long allocated = this.allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - this.allocatedBefore;
+
+		this.batch[this.batched++] = new Record(generation, this.phaseNanos.clone(), this.evaluations, allocated,
+				best, sum / population.size(), worst);
+		if (this.batched == BATCH) {
+			this.flush();
+		}
+
+		this.allocatedBefore = allocatedAfter;
+		Arrays.fill(this.phaseNanos, 0);
+		this.evaluations = 0;
+	}
+
+	/**
+	 * Write the queued records and close the file
+	 *
+	 * @throws IOException
+	 *             If a record couldn't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		this.flush();
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.writer.close();
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	private long allocatedBytes() {
+		return this.threads != null ? this.threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	/**
+	 * Hand the batched records to the writer
+	 */
+	private void flush() {
+		if (this.batched == 0) {
+			return;
+		}
+		final Record records[] = Arrays.copyOf(this.batch, this.batched);
+		this.batched = 0;
+		this.executor.execute(() -> this.write(records));
+	}
+
+	private void write(Record[] records) {
+		if (this.error != null) {
+			return;
+		}
+		try {
+			for (Record record : records) {
+				this.writer.write(record.toString());
+				this.writer.newLine();
+			}
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+
+	/**
+	 * Line of the CSV file
+	 */
+	private static class Record {
+		private final int generation;
+		private final long phaseNanos[];
+		private final long evaluations;
+		private final long allocatedBytes;
+		private final double bestCost;
+		private final double averageCost;
+		private final double worstCost;
+
+		Record(int generation, long[] phaseNanos, long evaluations, long allocatedBytes, double bestCost,
+				double averageCost, double worstCost) {
+			this.generation = generation;
+			this.phaseNanos = phaseNanos;
+			this.evaluations = evaluations;
+			this.allocatedBytes = allocatedBytes;
+			this.bestCost = bestCost;
+			this.averageCost = averageCost;
+			this.worstCost = worstCost;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder line = new StringBuilder().append(this.generation);
+			for (long nanos : this.phaseNanos) {
+				line.append(',').append(nanos / 1e6);
+			}
+			long evaluationNanos = this.phaseNanos[Phase.EVALUATION.ordinal()];
+			line.append(',').append(evaluationNanos > 0 ? Math.round(this.evaluations * 1e9 / evaluationNanos) : 0);
+			return line.append(',').append(this.allocatedBytes).append(',').append(this.bestCost).append(',')
+					.append(this.averageCost).append(',').append(this.worstCost).toString();
+		}
+	}
+}
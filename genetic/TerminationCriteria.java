@@ -0,0 +1,215 @@
+package genetic;
+
+/**
+ * Stopping criteria of the evolution loop, the loop stops as soon as any of
+ * the enabled criteria is met
+ *
+ * Besides the number of generations the loop can stop when the best cost
+ * doesn't improve for a number of generations, when a time budget runs out,
+ * when a target cost is reached or when the best cost is close enough to a
+ * lower bound of the problem. The criterion that stopped the loop is kept.
+ *
+ * Criteria keep the best cost seen and when they started, use one instance
+ * per evolution loop.
+ *
+ * @author ms
+ *
+ */
+public class TerminationCriteria {
+
+	/**
+	 * Criterion that stopped the loop
+	 */
+	public enum Reason {
+		MAX_GENERATIONS, STAGNATION, TIME_LIMIT, TARGET_COST, LOWER_BOUND_GAP
+	}
+
+	private int maxGenerations;
+	private int stagnationGenerations = 0;
+	private long timeLimitMillis = 0;
+	private double targetCost = 0;
+	private double lowerBound = 0;
+	private double lowerBoundGap = -1;
+
+	private long startTime = -1;
+	private double bestCost = Double.POSITIVE_INFINITY;
+	private int lastImprovement = 0;
+	private Reason reason;
+
+	/**
+	 * Initialize criteria stopping only after a number of generations
+	 *
+	 * @param maxGenerations
+	 *            Number of generations to terminate after
+	 */
+	public TerminationCriteria(int maxGenerations) {
+		this.maxGenerations = maxGenerations;
+	}
+
+	/**
+	 * Stop when the best cost doesn't improve
+	 *
+	 * @param stagnationGenerations
+	 *            Generations without improvement, 0 to disable
+	 * @return this
+	 */
+	public TerminationCriteria setStagnationGenerations(int stagnationGenerations) {
+		this.stagnationGenerations = stagnationGenerations;
+		return this;
+	}
+
+	/**
+	 * Stop when the time since start runs out
+	 *
+	 * @param timeLimitMillis
+	 *            Wall-clock budget in milliseconds, 0 to disable
+	 * @return this
+	 */
+	public TerminationCriteria setTimeLimit(long timeLimitMillis) {
+		this.timeLimitMillis = timeLimitMillis;
+		return this;
+	}
+
+	/**
+	 * Stop when the best cost is at or below a target
+	 *
+	 * @param targetCost
+	 *            Cost to reach, 0 to disable
+	 * @return this
+	 */
+	public TerminationCriteria setTargetCost(double targetCost) {
+		this.targetCost = targetCost;
+		return this;
+	}
+
+	/**
+	 * Stop when the best cost is close to a lower bound, (best - bound) / bound
+	 *
+	 * @param lowerBound
+	 *            Cost no solution can be below, see Evaluator.getLowerBound
+	 * @param gap
+	 *            Relative gap to stop at, e.g. 0.05 for 5%
+	 * @return this
+	 */
+	public TerminationCriteria setLowerBoundGap(double lowerBound, double gap) {
+		this.lowerBound = lowerBound;
+		this.lowerBoundGap = gap;
+		return this;
+	}
+
+	/**
+	 * Get new criteria with the same settings, not started, for another
+	 * population
+	 *
+	 * @return criteria
+	 */
+	public TerminationCriteria copy() {
+		TerminationCriteria copy = new TerminationCriteria(this.maxGenerations);
+		copy.stagnationGenerations = this.stagnationGenerations;
+		copy.timeLimitMillis = this.timeLimitMillis;
+		copy.targetCost = this.targetCost;
+		copy.lowerBound = this.lowerBound;
+		copy.lowerBoundGap = this.lowerBoundGap;
+		return copy;
+	}
+
+	/**
+	 * Start counting the time budget, otherwise it starts on the first check
+	 *
+	 * @return this
+	 */
+	public TerminationCriteria start() {
+		this.startTime = System.currentTimeMillis();
+		return this;
+	}
+
+	/**
+	 * Continue from a previous run of the same loop, see Checkpoint
+	 *
+	 * @param bestCost
+	 *            Best cost seen by the previous checks
+	 * @param lastImprovement
+	 *            Generation where the best cost last improved
+	 * @param elapsedMillis
+	 *            Time already used, counted in the time limit
+	 * @return this
+	 */
+	public TerminationCriteria restore(double bestCost, int lastImprovement, long elapsedMillis) {
+		this.bestCost = bestCost;
+		this.lastImprovement = lastImprovement;
+		this.startTime = System.currentTimeMillis() - elapsedMillis;
+		return this;
+	}
+
+	/**
+	 * Check every criterion
+	 *
+	 * @param generation
+	 *            Number of generations passed
+	 * @param population
+	 *            The current evaluated population
+	 * @return boolean True if any criterion is met, the reason is then kept
+	 */
+	public boolean isMet(int generation, Population population) {
+		long now = System.currentTimeMillis();
+		if (this.startTime < 0) {
+			this.startTime = now;
+		}
+
+		double cost = 1 / population.getFittest(0).getFitness();
+		if (cost < this.bestCost) {
+			this.bestCost = cost;
+			this.lastImprovement = generation;
+		}
+
+		if (generation > this.maxGenerations) {
+			this.reason = Reason.MAX_GENERATIONS;
+		} else if (this.targetCost > 0 && this.bestCost <= this.targetCost) {
+			this.reason = Reason.TARGET_COST;
+		} else if (this.lowerBoundGap >= 0 && this.lowerBound > 0
+				&& (this.bestCost - this.lowerBound) / this.lowerBound <= this.lowerBoundGap) {
+			this.reason = Reason.LOWER_BOUND_GAP;
+		} else if (this.stagnationGenerations > 0 && generation - this.lastImprovement >= this.stagnationGenerations) {
+			this.reason = Reason.STAGNATION;
+		} else if (this.timeLimitMillis > 0 && now - this.startTime >= this.timeLimitMillis) {
+			this.reason = Reason.TIME_LIMIT;
+		}
+		return this.reason != null;
+	}
+
+	/**
+	 * Get the criterion that stopped the loop
+	 *
+	 * @return reason, null if no criterion was met yet
+	 */
+	public Reason getReason() {
+		return this.reason;
+	}
+
+	/**
+	 * Get the best cost seen by the checks
+	 *
+	 * @return cost
+	 */
+	public double getBestCost() {
+		return this.bestCost;
+	}
+
+	/**
+	 * Get the generation where the best cost last improved
+	 *
+	 * @return generation
+	 */
+	public int getLastImprovement() {
+		return this.lastImprovement;
+	}
+
+	/**
+	 * Get the time since start
+	 *
+	 * @return milliseconds
+	 */
+	public long getElapsedMillis() {
+		return this.startTime < 0 ? 0 : System.currentTimeMillis() - this.startTime;
+	}
+}
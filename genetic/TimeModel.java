@@ -0,0 +1,121 @@
+package genetic;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+
+import model.Product;
+import model.TimeRange;
+
+/**
+ * Times of a run expressed as integer minutes since the starting time, so the
+ * cost of a route can be calculated with primitive arithmetic instead of
+ * LocalDateTime objects.
+ *
+ * Product deadlines, the end of the shift and the break window are converted
+ * once per run. Costs are kept as fixed-point integers in sixtieths of a cost
+ * unit, which represent exactly the overtime charged per minute.
+ *
+ * @author ms
+ *
+ */
+public class TimeModel {
+	/**
+	 * Fixed-point costs are stored multiplied by this scale
+	 */
+	public static final int COST_SCALE = 60;
+
+	private LocalDateTime curTime;
+	private int[] deadlines;
+	private int shiftEnd;
+	private int breakStart;
+	private int breakEnd;
+
+	/**
+	 * Convert the times of a run to minutes since curTime
+	 *
+	 * @param products
+	 *            The destinations referenced by the chromosome
+	 * @param shift
+	 *            Workers' shift, routes ending after it pay overtime
+	 * @param breakRange
+	 *            Workers' break window
+	 * @param curTime
+	 *            Time when every route starts
+	 */
+	public TimeModel(ArrayList<Product> products, TimeRange shift, TimeRange breakRange, LocalDateTime curTime) {
+		this.curTime = curTime;
+		this.deadlines = new int[products.size()];
+		for (int i = 0; i < this.deadlines.length; i++) {
+			this.deadlines[i] = this.toMinutes(products.get(i).getDeadline());
+		}
+		this.shiftEnd = this.toMinutes(shift.getEnd());
+		this.breakStart = this.toMinutes(breakRange.getStart());
+		this.breakEnd = this.toMinutes(breakRange.getEnd());
+	}
+
+	/**
+	 * Time needed to travel a distance, rounded to the nearest minute
+	 *
+	 * Same as taking the whole hours of distance / speed and rounding the
+	 * remaining fraction of hour to minutes, half minutes are rounded up.
+	 *
+	 * @param distance
+	 *            Distance in km
+	 * @param speed
+	 *            Speed in km/h
+	 * @return minutes
+	 */
+	public static int travelMinutes(int distance, int speed) {
+		int hours = distance / speed;
+		int remainder = distance % speed;
+		return hours * 60 + (remainder * 120 + speed) / (2 * speed);
+	}
+
+	/**
+	 * Convert a time to minutes since the starting time
+	 *
+	 * @param time
+	 * @return minutes
+	 */
+	public int toMinutes(LocalDateTime time) {
+		return (int) ChronoUnit.MINUTES.between(this.curTime, time);
+	}
+
+	/**
+	 * Convert minutes since the starting time back to a time
+	 *
+	 * @param minutes
+	 * @return time
+	 */
+	public LocalDateTime toDateTime(int minutes) {
+		return this.curTime.plusMinutes(minutes);
+	}
+
+	/**
+	 * Get the deadline of a destination
+	 *
+	 * @param destination
+	 *            Index of the destination in the chromosome
+	 * @return minutes
+	 */
+	public int getDeadline(int destination) {
+		return this.deadlines[destination];
+	}
+
+	public int getShiftEnd() {
+		return this.shiftEnd;
+	}
+
+	public int getBreakStart() {
+		return this.breakStart;
+	}
+
+	public int getBreakEnd() {
+		return this.breakEnd;
+	}
+
+	public LocalDateTime getCurTime() {
+		return this.curTime;
+	}
+}
@@ -0,0 +1,69 @@
+package genetic;
+
+import java.util.Random;
+
+/**
+ * Tournament selection over a population's rows
+ *
+ * Samples k distinct rows with Floyd's algorithm and returns the fittest one,
+ * without copying individuals or reordering the population, so many threads
+ * can select from the same population at once. A selector keeps a small
+ * buffer of sampled rows and must not be shared between threads.
+ *
+ * @author ms
+ *
+ */
+public class TournamentSelector {
+	private int tournamentSize;
+	private int picks[];
+
+	/**
+	 * Initialize selector
+	 *
+	 * @param tournamentSize
+	 *            Number of individuals competing in each tournament
+	 */
+	public TournamentSelector(int tournamentSize) {
+		this.tournamentSize = tournamentSize;
+		this.picks = new int[tournamentSize];
+	}
+
+	/**
+	 * Run a tournament
+	 *
+	 * @param population
+	 *            The population to select from, it's not modified
+	 * @param random
+	 *            Source of randomness of the calling thread
+	 * @return row The row of the tournament's winner
+	 */
+	public int select(Population population, Random random) {
+		int size = population.size();
+		int k = Math.min(this.tournamentSize, size);
+
+		int best = -1;
+		double bestFitness = 0;
+		for (int j = size - k, count = 0; j < size; j++, count++) {
+			// Floyd's sampling: a random row, or j if it was already picked
+			int row = random.nextInt(j + 1);
+			for (int i = 0; i < count; i++) {
+				if (this.picks[i] == row) {
+					row = j;
+					break;
+				}
+			}
+			this.picks[count] = row;
+
+			double fitness = population.getRow(row).getFitness();
+			if (best == -1 || fitness > bestFitness) {
+				best = row;
+				bestFitness = fitness;
+			}
+		}
+		return best;
+	}
+
+	public int getTournamentSize() {
+		return this.tournamentSize;
+	}
+}
@@ -0,0 +1,250 @@
+package genetic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.Product;
+import model.Vehicle;
+
+/**
+ * Continue a previous run after products were added or removed
+ *
+ * The chromosomes of the previous run reference products by their index in
+ * the previous list of products. They are repaired for the new list: removed
+ * products are dropped from their routes, the rest keep their order, and
+ * every added product is inserted where it adds the least distance cost in a
+ * vehicle with capacity left. Vehicle counts follow the routes and workers are
+ * kept, so the repaired population is already close to the previous
+ * solutions and evolving it converges much faster than a random one.
+ *
+ * Products are identified by their id, which must be unique in both lists.
+ *
+ * @author ms
+ *
+ */
+public class WarmStart {
+	private ArrayList<Product> previousProducts;
+	private ArrayList<Product> products;
+	private ArrayList<Vehicle> vehicles;
+	private DistanceMatrix distanceMatrix;
+
+	// Index in products of every product id
+	private Map<Integer, Integer> indexById = new HashMap<>();
+	// Indices in products of the added products, by deadline
+	private List<Integer> added = new ArrayList<>();
+
+	/**
+	 * Build the new list of products from the previous one and a delta
+	 *
+	 * @param previousProducts
+	 *            Products referenced by the previous run's chromosomes
+	 * @param addedProducts
+	 *            New products
+	 * @param removedIds
+	 *            Ids of the products no longer to be sent
+	 * @param vehicles
+	 *            The same vehicles as the previous run
+	 * @param depot
+	 * @throws IllegalArgumentException
+	 *             If an id is twice in a list, or an added product is still
+	 *             in the previous products and not removed
+	 */
+	public WarmStart(ArrayList<Product> previousProducts, Collection<Product> addedProducts,
+			Collection<Integer> removedIds, ArrayList<Vehicle> vehicles, Product depot) {
+		Set<Integer> removed = new HashSet<>(removedIds);
+		Set<Integer> kept = new HashSet<>();
+		ArrayList<Product> products = new ArrayList<>();
+		for (Product product : previousProducts) {
+			if (!removed.contains(product.getId())) {
+				products.add(product);
+				kept.add(product.getId());
+			}
+		}
+		for (Product product : addedProducts) {
+			if (kept.contains(product.getId())) {
+				throw new IllegalArgumentException(
+						"Added product " + product.getId() + " is still in the previous products and not removed");
+			}
+		}
+		products.addAll(addedProducts);
+		// Same order as the products selected by MTSP
+		Collections.sort(products);
+
+		this.init(previousProducts, products, vehicles, new DistanceMatrix(products, depot));
+	}
+
+	/**
+	 * Repair for a new list of products already built
+	 *
+	 * @param previousProducts
+	 *            Products referenced by the previous run's chromosomes
+	 * @param products
+	 *            Products referenced by the repaired chromosomes
+	 * @param vehicles
+	 *            The same vehicles as the previous run
+	 * @param distanceMatrix
+	 *            Distances between the new products
+	 */
+	public WarmStart(ArrayList<Product> previousProducts, ArrayList<Product> products, ArrayList<Vehicle> vehicles,
+			DistanceMatrix distanceMatrix) {
+		this.init(previousProducts, products, vehicles, distanceMatrix);
+	}
+
+	private void init(ArrayList<Product> previousProducts, ArrayList<Product> products, ArrayList<Vehicle> vehicles,
+			DistanceMatrix distanceMatrix) {
+		int totalCapacity = 0;
+		for (Vehicle vehicle : vehicles) {
+			totalCapacity += vehicle.getCapacity();
+		}
+		if (products.size() > totalCapacity) {
+			throw new IllegalArgumentException(
+					"Vehicles can carry " + totalCapacity + " products, not " + products.size());
+		}
+
+		this.previousProducts = previousProducts;
+		this.products = products;
+		this.vehicles = vehicles;
+		this.distanceMatrix = distanceMatrix;
+
+		// Ids must be unique, a duplicate would be repaired into the wrong index
+		Set<Integer> previousIds = new HashSet<>();
+		for (Product product : previousProducts) {
+			if (!previousIds.add(product.getId())) {
+				throw new IllegalArgumentException("Product " + product.getId() + " is twice in the previous products");
+			}
+		}
+		for (int i = 0; i < products.size(); i++) {
+			int id = products.get(i).getId();
+			if (this.indexById.put(id, i) != null) {
+				throw new IllegalArgumentException("Product " + id + " is twice in the new products");
+			}
+			if (!previousIds.contains(id)) {
+				this.added.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Get the products referenced by the repaired chromosomes, to build the
+	 * TimeModel and Evaluator of the new run
+	 *
+	 * @return products
+	 */
+	public ArrayList<Product> getProducts() {
+		return this.products;
+	}
+
+	public DistanceMatrix getDistanceMatrix() {
+		return this.distanceMatrix;
+	}
+
+	/**
+	 * Repair every individual of the previous run's population
+	 *
+	 * @param previous
+	 *            The previous run's population
+	 * @return population Repaired individuals in the same order, to be
+	 *         evaluated
+	 */
+	public Population repair(Population previous) {
+		int m = this.vehicles.size();
+		Population population = new Population(previous.size(), this.products.size(), m);
+		for (int i = 0; i < previous.size(); i++) {
+			population.setIndividual(i, this.repair(previous.getIndividual(i)));
+		}
+		return population;
+	}
+
+	/**
+	 * Repair a single individual, e.g. the previous run's best
+	 *
+	 * @param previous
+	 *            Individual referencing the previous products
+	 * @return individual Individual referencing the new products
+	 */
+	public Individual repair(Individual previous) {
+		int previousN = this.previousProducts.size();
+		int m = this.vehicles.size();
+		if (previous.getChromosomeLength() != previousN + m + m) {
+			throw new IllegalArgumentException("Individual doesn't match the previous products and vehicles");
+		}
+
+		// Routes of the remaining products, in their previous order
+		List<List<Integer>> routes = new ArrayList<>();
+		for (int j = 0, k = 0; j < m; j++) {
+			int count = previous.getGene(previousN + j);
+			List<Integer> route = new ArrayList<>();
+			for (int i = k; i < k + count; i++) {
+				Integer index = this.indexById.get(this.previousProducts.get(previous.getGene(i)).getId());
+				if (index != null) {
+					route.add(index);
+				}
+			}
+			routes.add(route);
+			k += count;
+		}
+
+		for (int destination : this.added) {
+			this.insertCheapest(routes, destination);
+		}
+
+		int n = this.products.size();
+		int chromosome[] = new int[n + m + m];
+		int k = 0;
+		for (int j = 0; j < m; j++) {
+			List<Integer> route = routes.get(j);
+			for (int destination : route) {
+				chromosome[k++] = destination;
+			}
+			chromosome[n + j] = route.size();
+			chromosome[n + m + j] = previous.getGene(previousN + m + j);
+		}
+		return new Individual(chromosome);
+	}
+
+	/**
+	 * Insert a destination where it adds the least distance cost, routes start
+	 * at the depot and end at their last destination
+	 */
+	private void insertCheapest(List<List<Integer>> routes, int destination) {
+		int depot = this.distanceMatrix.getDepot();
+		long bestCost = Long.MAX_VALUE;
+		int bestRoute = -1;
+		int bestPosition = -1;
+
+		for (int j = 0; j < routes.size(); j++) {
+			List<Integer> route = routes.get(j);
+			Vehicle vehicle = this.vehicles.get(j);
+			if (route.size() >= vehicle.getCapacity()) {
+				continue;
+			}
+			int prev = depot;
+			for (int position = 0; position <= route.size(); position++) {
+				int increase = this.distanceMatrix.distance(prev, destination);
+				if (position < route.size()) {
+					int next = route.get(position);
+					increase += this.distanceMatrix.distance(destination, next)
+							- this.distanceMatrix.distance(prev, next);
+					prev = next;
+				}
+				long cost = (long) increase * vehicle.getCostPerKm();
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestRoute = j;
+					bestPosition = position;
+				}
+			}
+		}
+
+		if (bestRoute < 0) {
+			throw new IllegalStateException("No vehicle has capacity left for product " + destination);
+		}
+		routes.get(bestRoute).add(bestPosition, destination);
+	}
+}
@@ -0,0 +1,110 @@
+package genetic;
+
+import java.util.Random;
+
+/**
+ * xoshiro256** random number generator whose state can be saved and
+ * restored, so a run continued from a checkpoint draws exactly the same
+ * numbers it would have drawn without stopping
+ *
+ * Extends Random so it can be used wherever the algorithm takes one. It's not
+ * thread-safe, each thread needs its own generator.
+ *
+ * @author ms
+ *
+ */
+public class Xoshiro256 extends Random {
+	private static final long serialVersionUID = 1L;
+
+	// No initializers, setSeed sets them from Random's constructor
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	/**
+	 * Initialize generator from a seed
+	 *
+	 * @param seed
+	 */
+	public Xoshiro256(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Initialize generator with a saved state
+	 *
+	 * @param state
+	 *            Four words returned by getState
+	 */
+	public Xoshiro256(long[] state) {
+		super(0);
+		this.setState(state);
+	}
+
+	/**
+	 * Seed the four words of state with SplitMix64, as recommended by the
+	 * generator's authors
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		this.s0 = splitMix(seed += 0x9E3779B97F4A7C15L);
+		this.s1 = splitMix(seed += 0x9E3779B97F4A7C15L);
+		this.s2 = splitMix(seed += 0x9E3779B97F4A7C15L);
+		this.s3 = splitMix(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	@Override
+	public long nextLong() {
+		long result = Long.rotateLeft(this.s1 * 5, 7) * 9;
+		long t = this.s1 << 17;
+		this.s2 ^= this.s0;
+		this.s3 ^= this.s1;
+		this.s1 ^= this.s2;
+		this.s0 ^= this.s3;
+		this.s2 ^= t;
+		this.s3 = Long.rotateLeft(this.s3, 45);
+		return result;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (this.nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Get the current state
+	 *
+	 * @return state Four words
+	 */
+	public long[] getState() {
+		return new long[] { this.s0, this.s1, this.s2, this.s3 };
+	}
+
+	/**
+	 * Continue from a saved state
+	 *
+	 * @param state
+	 *            Four words returned by getState, not all zero
+	 */
+	public void setState(long[] state) {
+		if (state.length != 4 || (state[0] | state[1] | state[2] | state[3]) == 0) {
+			throw new IllegalArgumentException("Invalid xoshiro256 state");
+		}
+		this.s0 = state[0];
+		this.s1 = state[1];
+		this.s2 = state[2];
+		this.s3 = state[3];
+	}
+
+	private static long splitMix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
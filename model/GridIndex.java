@@ -0,0 +1,266 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spatial index dividing the bounding box of the points in square cells of
+ * the same size, for points spread over a bounded area like the 70 x 50 map
+ * of the instances
+ *
+ * Points are bucketed by cell with a counting sort, so building takes linear
+ * time. Nearest neighbor queries visit rings of cells around the location
+ * until no point outside them can be nearer than the k found.
+ *
+ * @author ms
+ *
+ */
+public class GridIndex implements SpatialIndex {
+	// Points spread over at most this many unit cells each are indexed with a grid
+	static final long DENSE_AREA = 64;
+	// Points per cell on average
+	private static final int POINTS_PER_CELL = 2;
+
+	private int size;
+	private int x[];
+	private int y[];
+
+	private int minX;
+	private int minY;
+	private int cellSize;
+	private int columns;
+	private int rows;
+	// Points of cell c are cellPoints[cellStart[c]..cellStart[c + 1]), by position
+	private int cellStart[];
+	private int cellPoints[];
+
+	private final ThreadLocal<NeighborHeap> heaps = ThreadLocal.withInitial(NeighborHeap::new);
+
+	/**
+	 * Build the grid over products
+	 *
+	 * @param products
+	 */
+	public GridIndex(List<Product> products) {
+		this(xs(products), ys(products));
+	}
+
+	/**
+	 * Build the grid over coordinates, with a cell size fitting a couple of
+	 * points per cell
+	 *
+	 * @param x
+	 * @param y
+	 */
+	public GridIndex(int[] x, int[] y) {
+		this(x, y, 0);
+	}
+
+	/**
+	 * Build the grid over coordinates
+	 *
+	 * @param x
+	 * @param y
+	 * @param cellSize
+	 *            Side of the cells, 0 to choose one from the density
+	 */
+	public GridIndex(int[] x, int[] y, int cellSize) {
+		this.size = x.length;
+		this.x = x.clone();
+		this.y = y.clone();
+
+		long minX = 0, maxX = 0, minY = 0, maxY = 0;
+		for (int i = 0; i < this.size; i++) {
+			minX = i == 0 ? x[i] : Math.min(minX, x[i]);
+			maxX = i == 0 ? x[i] : Math.max(maxX, x[i]);
+			minY = i == 0 ? y[i] : Math.min(minY, y[i]);
+			maxY = i == 0 ? y[i] : Math.max(maxY, y[i]);
+		}
+		long width = maxX - minX + 1;
+		long height = maxY - minY + 1;
+		if (cellSize <= 0) {
+			double area = (double) width * height * POINTS_PER_CELL / Math.max(1, this.size);
+			cellSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.ceil(Math.sqrt(area))));
+		}
+		this.minX = (int) minX;
+		this.minY = (int) minY;
+		this.cellSize = cellSize;
+		this.columns = (int) ((width + cellSize - 1) / cellSize);
+		this.rows = (int) ((height + cellSize - 1) / cellSize);
+
+		// Counting sort of the points by cell, each cell keeps them by position
+		int cells = this.columns * this.rows;
+		this.cellStart = new int[cells + 1];
+		int cellOf[] = new int[this.size];
+		for (int i = 0; i < this.size; i++) {
+			cellOf[i] = this.row(this.y[i]) * this.columns + this.column(this.x[i]);
+			this.cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cells; c++) {
+			this.cellStart[c + 1] += this.cellStart[c];
+		}
+		this.cellPoints = new int[this.size];
+		int next[] = Arrays.copyOf(this.cellStart, cells);
+		for (int i = 0; i < this.size; i++) {
+			this.cellPoints[next[cellOf[i]]++] = i;
+		}
+	}
+
+	private static int[] xs(List<Product> products) {
+		int x[] = new int[products.size()];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = products.get(i).getX();
+		}
+		return x;
+	}
+
+	private static int[] ys(List<Product> products) {
+		int y[] = new int[products.size()];
+		for (int i = 0; i < y.length; i++) {
+			y[i] = products.get(i).getY();
+		}
+		return y;
+	}
+
+	/**
+	 * Column of an x coordinate, clamped to the grid
+	 */
+	private int column(int x) {
+		long column = ((long) x - this.minX) / this.cellSize;
+		return (int) Math.max(0, Math.min(this.columns - 1, column));
+	}
+
+	/**
+	 * Row of a y coordinate, clamped to the grid
+	 */
+	private int row(int y) {
+		long row = ((long) y - this.minY) / this.cellSize;
+		return (int) Math.max(0, Math.min(this.rows - 1, row));
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public int getX(int i) {
+		return this.x[i];
+	}
+
+	@Override
+	public int getY(int i) {
+		return this.y[i];
+	}
+
+	@Override
+	public int nearest(int x, int y, int k, int exclude, int[] out, int offset) {
+		NeighborHeap heap = this.heaps.get();
+		heap.reset(Math.max(0, Math.min(k, this.size)));
+		if (this.size == 0 || k <= 0) {
+			return 0;
+		}
+		int cx = this.column(x);
+		int cy = this.row(y);
+		int maxRing = Math.max(Math.max(cx, this.columns - 1 - cx), Math.max(cy, this.rows - 1 - cy));
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Cells at exactly ring cells from the location's cell
+			for (int row = Math.max(0, cy - ring); row <= Math.min(this.rows - 1, cy + ring); row++) {
+				boolean edge = row == cy - ring || row == cy + ring;
+				int step = edge ? 1 : 2 * ring;
+				for (int column = cx - ring; column <= cx + ring; column += Math.max(1, step)) {
+					if (column >= 0 && column < this.columns) {
+						this.offerCell(heap, row * this.columns + column, x, y, exclude);
+					}
+				}
+			}
+
+			// Points in farther cells are at least this far
+			if (heap.isFull() && this.ringBound(x, y, cx, cy, ring) > (int) (heap.worst() >>> 32)) {
+				break;
+			}
+		}
+		return heap.drain(out, offset);
+	}
+
+	private void offerCell(NeighborHeap heap, int cell, int x, int y, int exclude) {
+		for (int p = this.cellStart[cell]; p < this.cellStart[cell + 1]; p++) {
+			int i = this.cellPoints[p];
+			if (i != exclude) {
+				heap.offer(NeighborHeap.key(Math.abs(this.x[i] - x) + Math.abs(this.y[i] - y), i));
+			}
+		}
+	}
+
+	/**
+	 * Smallest distance from a location to a point in a cell farther than
+	 * ring from the location's cell
+	 */
+	private long ringBound(int x, int y, int cx, int cy, int ring) {
+		long bound = Long.MAX_VALUE;
+		if (cx - ring > 0) {
+			bound = Math.min(bound, (long) x - ((long) this.minX + (long) (cx - ring) * this.cellSize) + 1);
+		}
+		if (cx + ring < this.columns - 1) {
+			bound = Math.min(bound, (long) this.minX + (long) (cx + ring + 1) * this.cellSize - x);
+		}
+		if (cy - ring > 0) {
+			bound = Math.min(bound, (long) y - ((long) this.minY + (long) (cy - ring) * this.cellSize) + 1);
+		}
+		if (cy + ring < this.rows - 1) {
+			bound = Math.min(bound, (long) this.minY + (long) (cy + ring + 1) * this.cellSize - y);
+		}
+		return bound;
+	}
+
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		if (radius < 0) {
+			return new int[0];
+		}
+		return this.collect((long) x - radius, (long) y - radius, (long) x + radius, (long) y + radius, x, y, radius);
+	}
+
+	@Override
+	public int[] inBox(int minX, int minY, int maxX, int maxY) {
+		return this.collect(minX, minY, maxX, maxY, 0, 0, -1);
+	}
+
+	/**
+	 * Positions of the points inside a box and, with a radius, within it of
+	 * the location
+	 */
+	private int[] collect(long minX, long minY, long maxX, long maxY, int x, int y, long radius) {
+		if (this.size == 0 || minX > maxX || minY > maxY) {
+			return new int[0];
+		}
+		int fromColumn = this.column((int) Math.max(Integer.MIN_VALUE, minX));
+		int toColumn = this.column((int) Math.min(Integer.MAX_VALUE, maxX));
+		int fromRow = this.row((int) Math.max(Integer.MIN_VALUE, minY));
+		int toRow = this.row((int) Math.min(Integer.MAX_VALUE, maxY));
+
+		int found[] = new int[16];
+		int count = 0;
+		for (int row = fromRow; row <= toRow; row++) {
+			for (int column = fromColumn; column <= toColumn; column++) {
+				int cell = row * this.columns + column;
+				for (int p = this.cellStart[cell]; p < this.cellStart[cell + 1]; p++) {
+					int i = this.cellPoints[p];
+					boolean inside = radius >= 0
+							? (long) Math.abs(this.x[i] - x) + Math.abs(this.y[i] - y) <= radius
+							: this.x[i] >= minX && this.x[i] <= maxX && this.y[i] >= minY && this.y[i] <= maxY;
+					if (inside) {
+						if (count == found.length) {
+							found = Arrays.copyOf(found, count * 2);
+						}
+						found[count++] = i;
+					}
+				}
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+}
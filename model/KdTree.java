@@ -0,0 +1,243 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spatial index splitting the points alternately by x and by y at the
+ * median, for points of any extent and distribution
+ *
+ * The tree is implicit: the points are rearranged in an array so the median
+ * of every range is its node and the halves before and after it are its
+ * subtrees. Medians are found with quickselect, so building takes
+ * O(n log n) and no node objects are allocated.
+ *
+ * @author ms
+ *
+ */
+public class KdTree implements SpatialIndex {
+	private int size;
+	private int x[];
+	private int y[];
+	// Positions of the points in tree order
+	private int order[];
+
+	private final ThreadLocal<NeighborHeap> heaps = ThreadLocal.withInitial(NeighborHeap::new);
+
+	/**
+	 * Build the tree over products
+	 *
+	 * @param products
+	 */
+	public KdTree(List<Product> products) {
+		this.size = products.size();
+		this.x = new int[this.size];
+		this.y = new int[this.size];
+		for (int i = 0; i < this.size; i++) {
+			this.x[i] = products.get(i).getX();
+			this.y[i] = products.get(i).getY();
+		}
+		this.build();
+	}
+
+	/**
+	 * Build the tree over coordinates
+	 *
+	 * @param x
+	 * @param y
+	 */
+	public KdTree(int[] x, int[] y) {
+		this.size = x.length;
+		this.x = x.clone();
+		this.y = y.clone();
+		this.build();
+	}
+
+	private void build() {
+		this.order = new int[this.size];
+		for (int i = 0; i < this.size; i++) {
+			this.order[i] = i;
+		}
+		this.build(0, this.size, 0);
+	}
+
+	/**
+	 * Place the median of a range by an axis in its middle and build both
+	 * halves by the other axis
+	 */
+	private void build(int from, int to, int axis) {
+		while (to - from > 1) {
+			int middle = (from + to) >>> 1;
+			this.select(from, to, middle, axis);
+			this.build(from, middle, 1 - axis);
+			from = middle + 1;
+			axis = 1 - axis;
+		}
+	}
+
+	/**
+	 * Key of a point by an axis, ties by position
+	 */
+	private long key(int i, int axis) {
+		return ((long) (axis == 0 ? this.x[i] : this.y[i]) << 32) | i;
+	}
+
+	/**
+	 * Quickselect: rearrange order[from..to) so the point at nth has the nth
+	 * key, smaller keys before it and larger ones after it
+	 */
+	private void select(int from, int to, int nth, int axis) {
+		int lo = from;
+		int hi = to - 1;
+		while (lo < hi) {
+			// Median of three as pivot
+			int mid = (lo + hi) >>> 1;
+			long a = this.key(this.order[lo], axis);
+			long b = this.key(this.order[mid], axis);
+			long c = this.key(this.order[hi], axis);
+			long pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (this.key(this.order[i], axis) < pivot) {
+					i++;
+				}
+				while (this.key(this.order[j], axis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int aux = this.order[i];
+					this.order[i] = this.order[j];
+					this.order[j] = aux;
+					i++;
+					j--;
+				}
+			}
+			if (nth <= j) {
+				hi = j;
+			} else if (nth >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public int getX(int i) {
+		return this.x[i];
+	}
+
+	@Override
+	public int getY(int i) {
+		return this.y[i];
+	}
+
+	@Override
+	public int nearest(int x, int y, int k, int exclude, int[] out, int offset) {
+		NeighborHeap heap = this.heaps.get();
+		heap.reset(Math.max(0, Math.min(k, this.size)));
+		if (k > 0) {
+			this.nearest(heap, 0, this.size, 0, x, y, exclude);
+		}
+		return heap.drain(out, offset);
+	}
+
+	private void nearest(NeighborHeap heap, int from, int to, int axis, int x, int y, int exclude) {
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			int i = this.order[middle];
+			if (i != exclude) {
+				heap.offer(NeighborHeap.key(Math.abs(this.x[i] - x) + Math.abs(this.y[i] - y), i));
+			}
+
+			// Search the side of the location first, the other one only if it can hold a nearer point
+			long difference = axis == 0 ? (long) x - this.x[i] : (long) y - this.y[i];
+			boolean left = difference < 0;
+			if (left) {
+				this.nearest(heap, from, middle, 1 - axis, x, y, exclude);
+			} else {
+				this.nearest(heap, middle + 1, to, 1 - axis, x, y, exclude);
+			}
+			if ((Math.min(Math.abs(difference), Integer.MAX_VALUE) << 32) >= heap.worst()) {
+				return;
+			}
+			if (left) {
+				from = middle + 1;
+			} else {
+				to = middle;
+			}
+			axis = 1 - axis;
+		}
+	}
+
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		if (radius < 0) {
+			return new int[0];
+		}
+		return this.collect((long) x - radius, (long) y - radius, (long) x + radius, (long) y + radius, x, y, radius);
+	}
+
+	@Override
+	public int[] inBox(int minX, int minY, int maxX, int maxY) {
+		return this.collect(minX, minY, maxX, maxY, 0, 0, -1);
+	}
+
+	/**
+	 * Positions of the points inside a box and, with a radius, within it of
+	 * the location
+	 */
+	private int[] collect(long minX, long minY, long maxX, long maxY, int x, int y, long radius) {
+		int found[] = new int[16];
+		int count = 0;
+		// Ranges of the tree still to visit and their axis
+		int stack[] = new int[3 * 64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = this.size;
+		stack[top++] = 0;
+		while (top > 0) {
+			int axis = stack[--top];
+			int to = stack[--top];
+			int from = stack[--top];
+			if (from >= to) {
+				continue;
+			}
+			int middle = (from + to) >>> 1;
+			int i = this.order[middle];
+			boolean inside = radius >= 0 ? (long) Math.abs(this.x[i] - x) + Math.abs(this.y[i] - y) <= radius
+					: this.x[i] >= minX && this.x[i] <= maxX && this.y[i] >= minY && this.y[i] <= maxY;
+			if (inside) {
+				if (count == found.length) {
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = i;
+			}
+
+			// Points before the middle have a coordinate up to its own, after it at least its own
+			long split = axis == 0 ? this.x[i] : this.y[i];
+			long min = axis == 0 ? minX : minY;
+			long max = axis == 0 ? maxX : maxY;
+			if (min <= split) {
+				stack[top++] = from;
+				stack[top++] = middle;
+				stack[top++] = 1 - axis;
+			}
+			if (max >= split) {
+				stack[top++] = middle + 1;
+				stack[top++] = to;
+				stack[top++] = 1 - axis;
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+}
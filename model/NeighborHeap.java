@@ -0,0 +1,105 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Bounded max-heap keeping the k best candidates of a nearest neighbor
+ * query, shared by the spatial indexes
+ *
+ * Candidates are long keys with the distance in the high bits and the
+ * position in the low bits, so ties are resolved by lower position.
+ *
+ * @author ms
+ *
+ */
+class NeighborHeap {
+	private long keys[] = new long[16];
+	private int size;
+	private int capacity;
+
+	static long key(int distance, int position) {
+		return ((long) distance << 32) | position;
+	}
+
+	/**
+	 * Empty the heap
+	 *
+	 * @param capacity
+	 *            Number of candidates kept
+	 */
+	void reset(int capacity) {
+		if (this.keys.length < capacity) {
+			this.keys = new long[capacity];
+		}
+		this.capacity = capacity;
+		this.size = 0;
+	}
+
+	boolean isFull() {
+		return this.size == this.capacity;
+	}
+
+	/**
+	 * Get the worst candidate kept
+	 *
+	 * @return key, Long.MAX_VALUE while the heap isn't full
+	 */
+	long worst() {
+		return this.size == this.capacity && this.size > 0 ? this.keys[0] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Keep a candidate if it's better than the worst one
+	 *
+	 * @param key
+	 */
+	void offer(long key) {
+		if (this.capacity == 0) {
+			return;
+		}
+		if (this.size < this.capacity) {
+			// Sift up
+			int i = this.size++;
+			while (i > 0 && this.keys[(i - 1) >>> 1] < key) {
+				this.keys[i] = this.keys[(i - 1) >>> 1];
+				i = (i - 1) >>> 1;
+			}
+			this.keys[i] = key;
+		} else if (key < this.keys[0]) {
+			// Replace the worst and sift down
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && this.keys[child + 1] > this.keys[child]) {
+					child++;
+				}
+				if (this.keys[child] <= key) {
+					break;
+				}
+				this.keys[i] = this.keys[child];
+				i = child;
+			}
+			this.keys[i] = key;
+		}
+	}
+
+	/**
+	 * Write the positions of the candidates, best first
+	 *
+	 * @param out
+	 * @param offset
+	 * @return count
+	 */
+	int drain(int[] out, int offset) {
+		Arrays.sort(this.keys, 0, this.size);
+		for (int i = 0; i < this.size; i++) {
+			out[offset + i] = (int) this.keys[i];
+		}
+		int count = this.size;
+		this.size = 0;
+		return count;
+	}
+}
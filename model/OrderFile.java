@@ -0,0 +1,371 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Orders read from a .prn file, one order per line with the columns x, y,
+ * yyyy, mm, dd, HH and MM separated by spaces or tabs.
+ *
+ * The file is memory-mapped and the numbers are parsed directly from its
+ * bytes into one int array per column. Big files are split in chunks at line
+ * boundaries that are parsed on several threads. Lines that can't be parsed
+ * are skipped and reported with their line number, blank lines are ignored.
+ *
+ * @author ms
+ *
+ */
+public class OrderFile {
+	private static final int COLUMNS = 7;
+	// Smallest chunk worth a thread of its own
+	private static final long MIN_CHUNK = 1 << 20;
+	// Largest region mapped at once
+	private static final long MAX_CHUNK = 1 << 30;
+
+	private int size;
+	private int x[];
+	private int y[];
+	private int year[];
+	private int month[];
+	private int day[];
+	private int hour[];
+	private int minute[];
+	private List<MalformedLine> malformedLines;
+
+	/**
+	 * Line that couldn't be parsed
+	 */
+	public static class MalformedLine {
+		private final long lineNumber;
+		private final String reason;
+
+		MalformedLine(long lineNumber, String reason) {
+			this.lineNumber = lineNumber;
+			this.reason = reason;
+		}
+
+		/**
+		 * @return lineNumber Starting from 1
+		 */
+		public long getLineNumber() {
+			return this.lineNumber;
+		}
+
+		public String getReason() {
+			return this.reason;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + this.lineNumber + ": " + this.reason;
+		}
+	}
+
+	/**
+	 * Read an order file
+	 *
+	 * @param path
+	 * @param threads
+	 *            Maximum number of threads parsing chunks, 1 to parse on the
+	 *            calling thread
+	 * @return orders
+	 * @throws IOException
+	 */
+	public static OrderFile load(Path path, int threads) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			long boundaries[] = boundaries(channel, length, threads);
+			int chunks = boundaries.length - 1;
+
+			Chunk results[] = new Chunk[chunks];
+			if (chunks == 1) {
+				results[0] = parse(channel, boundaries[0], boundaries[1]);
+			} else {
+				ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+				try {
+					List<Future<Chunk>> futures = new ArrayList<>();
+					for (int i = 0; i < chunks; i++) {
+						final long start = boundaries[i];
+						final long end = boundaries[i + 1];
+						futures.add(executor.submit(() -> parse(channel, start, end)));
+					}
+					for (int i = 0; i < chunks; i++) {
+						results[i] = futures.get(i).get();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading " + path, e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("Couldn't read " + path, e.getCause());
+				} finally {
+					executor.shutdown();
+				}
+			}
+			return new OrderFile(results);
+		}
+	}
+
+	/**
+	 * Join the chunks in file order
+	 */
+	private OrderFile(Chunk[] chunks) {
+		for (Chunk chunk : chunks) {
+			this.size += chunk.count;
+		}
+		this.x = new int[this.size];
+		this.y = new int[this.size];
+		this.year = new int[this.size];
+		this.month = new int[this.size];
+		this.day = new int[this.size];
+		this.hour = new int[this.size];
+		this.minute = new int[this.size];
+		int columns[][] = { this.x, this.y, this.year, this.month, this.day, this.hour, this.minute };
+
+		List<MalformedLine> malformed = new ArrayList<>();
+		int offset = 0;
+		long firstLine = 1;
+		for (Chunk chunk : chunks) {
+			for (int i = 0; i < chunk.count; i++) {
+				for (int c = 0; c < COLUMNS; c++) {
+					columns[c][offset + i] = chunk.values[i * COLUMNS + c];
+				}
+			}
+			for (MalformedLine line : chunk.malformed) {
+				malformed.add(new MalformedLine(firstLine + line.lineNumber, line.reason));
+			}
+			offset += chunk.count;
+			firstLine += chunk.lines;
+		}
+		this.malformedLines = Collections.unmodifiableList(malformed);
+	}
+
+	/**
+	 * Split the file in chunks that start at the beginning of a line
+	 */
+	private static long[] boundaries(FileChannel channel, long length, int threads) throws IOException {
+		int chunks = (int) Math.max(1, Math.min(threads, length / MIN_CHUNK));
+		chunks = (int) Math.max(chunks, (length + MAX_CHUNK - 1) / MAX_CHUNK);
+
+		long boundaries[] = new long[chunks + 1];
+		boundaries[chunks] = length;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		for (int i = 1; i < chunks; i++) {
+			// Move forward to the byte after the next new line
+			long position = Math.max(length / chunks * i, boundaries[i - 1]);
+			boundaries[i] = length;
+			search: while (position < length) {
+				buffer.clear();
+				int read = channel.read(buffer, position);
+				if (read <= 0) {
+					break;
+				}
+				for (int j = 0; j < read; j++) {
+					if (buffer.get(j) == '\n') {
+						boundaries[i] = position + j + 1;
+						break search;
+					}
+				}
+				position += read;
+			}
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Parse the lines of a chunk, line numbers of the malformed ones start
+	 * from 0 at the beginning of the chunk
+	 */
+	private static Chunk parse(FileChannel channel, long start, long end) throws IOException {
+		Chunk chunk = new Chunk((int) Math.min(1 << 20, (end - start) / 16 + 1));
+		if (end <= start) {
+			return chunk;
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+		int fields[] = new int[COLUMNS];
+		int field = 0;
+		int value = 0;
+		int digits = 0;
+		boolean negative = false;
+		String error = null;
+
+		int length = (int) (end - start);
+		for (int i = 0; i <= length; i++) {
+			// A last line without new line ends with the chunk
+			byte b = i < length ? buffer.get(i) : (byte) '\n';
+
+			if (b >= '0' && b <= '9') {
+				if (digits == 9) {
+					error = error != null ? error : "number too long";
+				}
+				value = value * 10 + (b - '0');
+				digits++;
+			} else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				if (digits > 0) {
+					if (field < COLUMNS) {
+						fields[field] = negative ? -value : value;
+					}
+					field++;
+				} else if (negative) {
+					error = error != null ? error : "sign without number";
+				}
+				value = 0;
+				digits = 0;
+				negative = false;
+
+				if (b == '\n') {
+					if (error == null && field > 0) {
+						error = check(fields, field);
+					}
+					if (error != null) {
+						chunk.malformed.add(new MalformedLine(chunk.lines, error));
+					} else if (field > 0) {
+						chunk.add(fields);
+					}
+					chunk.lines++;
+					field = 0;
+					error = null;
+				}
+			} else if (b == '-' && digits == 0 && !negative) {
+				negative = true;
+			} else {
+				error = error != null ? error : "unexpected character '" + (char) (b & 0xFF) + "'";
+			}
+		}
+		// The new line added after a complete last line isn't a line of the file
+		if (buffer.get(length - 1) == '\n') {
+			chunk.lines--;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Check a complete line
+	 *
+	 * @return error, null if the line is valid
+	 */
+	private static String check(int[] fields, int count) {
+		if (count != COLUMNS) {
+			return "expected " + COLUMNS + " numbers, found " + count;
+		}
+		if (fields[2] < Year.MIN_VALUE || fields[2] > Year.MAX_VALUE || fields[3] < 1 || fields[3] > 12
+				|| fields[5] < 0 || fields[5] > 23 || fields[6] < 0 || fields[6] > 59) {
+			return "invalid date";
+		}
+		// Days past the end of the month, like February 30
+		if (fields[4] < 1 || fields[4] > YearMonth.of(fields[2], fields[3]).lengthOfMonth()) {
+			return "invalid date";
+		}
+		return null;
+	}
+
+	/**
+	 * Create a product for every order, ids are their position in the file
+	 *
+	 * @return products
+	 */
+	public ArrayList<Product> toProducts() {
+		ArrayList<Product> products = new ArrayList<>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			products.add(new Product(i, this.x[i], this.y[i], this.getDeadline(i), true));
+		}
+		return products;
+	}
+
+	/**
+	 * Get the deadline of an order
+	 *
+	 * @param i
+	 *            Position of the order in the file
+	 * @return deadline
+	 */
+	public LocalDateTime getDeadline(int i) {
+		return LocalDateTime.of(this.year[i], this.month[i], this.day[i], this.hour[i], this.minute[i]);
+	}
+
+	/**
+	 * Get number of orders read
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public int[] getX() {
+		return this.x;
+	}
+
+	public int[] getY() {
+		return this.y;
+	}
+
+	public int[] getYear() {
+		return this.year;
+	}
+
+	public int[] getMonth() {
+		return this.month;
+	}
+
+	public int[] getDay() {
+		return this.day;
+	}
+
+	public int[] getHour() {
+		return this.hour;
+	}
+
+	public int[] getMinute() {
+		return this.minute;
+	}
+
+	/**
+	 * Get the lines that were skipped
+	 *
+	 * @return malformed lines in file order
+	 */
+	public List<MalformedLine> getMalformedLines() {
+		return this.malformedLines;
+	}
+
+	/**
+	 * Orders of a chunk, their columns interleaved
+	 */
+	private static class Chunk {
+		private int values[];
+		private int count = 0;
+		private long lines = 0;
+		private List<MalformedLine> malformed = new ArrayList<>();
+
+		Chunk(int capacity) {
+			this.values = new int[capacity * COLUMNS];
+		}
+
+		void add(int[] fields) {
+			if ((this.count + 1) * COLUMNS > this.values.length) {
+				this.values = Arrays.copyOf(this.values, Math.max(this.values.length * 2, COLUMNS * 16));
+			}
+			System.arraycopy(fields, 0, this.values, this.count * COLUMNS, COLUMNS);
+			this.count++;
+		}
+	}
+}
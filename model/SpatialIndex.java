@@ -0,0 +1,144 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Index over the coordinates of a set of points answering nearest neighbor,
+ * radius and bounding box queries with the Manhattan distance, the same as
+ * Product.distanceFrom
+ *
+ * Points are referred to by their position in the list or arrays the index
+ * was built from. Nearest points are returned nearest first, ties by lower
+ * position, the other queries return positions in ascending order, so every
+ * implementation gives the same results. Queries can be run from several
+ * threads at once.
+ *
+ * @author ms
+ *
+ */
+public interface SpatialIndex {
+
+	/**
+	 * Get number of points
+	 *
+	 * @return size
+	 */
+	int size();
+
+	int getX(int i);
+
+	int getY(int i);
+
+	/**
+	 * Find the k points nearest to a location
+	 *
+	 * @param x
+	 * @param y
+	 * @param k
+	 *            Number of points
+	 * @param exclude
+	 *            Position of a point left out, -1 to leave none out
+	 * @param out
+	 *            Array where the positions are written, nearest first
+	 * @param offset
+	 *            Position in out of the first one
+	 * @return count Number of positions written, less than k if there are
+	 *         fewer points
+	 */
+	int nearest(int x, int y, int k, int exclude, int[] out, int offset);
+
+	/**
+	 * Find the k points nearest to a location
+	 *
+	 * @param x
+	 * @param y
+	 * @param k
+	 *            Number of points
+	 * @return positions Nearest first
+	 */
+	default int[] nearest(int x, int y, int k) {
+		int out[] = new int[Math.max(0, Math.min(k, this.size()))];
+		this.nearest(x, y, out.length, -1, out, 0);
+		return out;
+	}
+
+	/**
+	 * Find the points at a distance of at most radius from a location
+	 *
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return positions In ascending order
+	 */
+	int[] withinRadius(int x, int y, int radius);
+
+	/**
+	 * Find the points inside a rectangle, borders included
+	 *
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 * @return positions In ascending order
+	 */
+	int[] inBox(int minX, int minY, int maxX, int maxY);
+
+	/**
+	 * Find the k nearest other points of every point, meant to be calculated
+	 * once and used as candidate lists
+	 *
+	 * @param k
+	 *            Number of neighbors, at most size() - 1
+	 * @return neighbors The k neighbors of point i start at i * k, nearest
+	 *         first
+	 */
+	default int[] neighborLists(int k) {
+		int size = this.size();
+		k = Math.max(0, Math.min(k, size - 1));
+		int neighbors[] = new int[size * k];
+		for (int i = 0; i < size; i++) {
+			this.nearest(this.getX(i), this.getY(i), k, i, neighbors, i * k);
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Build an index over products, a grid when they cover a bounded area
+	 * densely and a k-d tree otherwise
+	 *
+	 * @param products
+	 * @return index
+	 */
+	static SpatialIndex of(List<Product> products) {
+		int x[] = new int[products.size()];
+		int y[] = new int[products.size()];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = products.get(i).getX();
+			y[i] = products.get(i).getY();
+		}
+		return of(x, y);
+	}
+
+	/**
+	 * Build an index over coordinates, a grid when they cover a bounded area
+	 * densely and a k-d tree otherwise
+	 *
+	 * @param x
+	 * @param y
+	 * @return index
+	 */
+	static SpatialIndex of(int[] x, int[] y) {
+		long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE, minY = Long.MAX_VALUE, maxY = Long.MIN_VALUE;
+		for (int i = 0; i < x.length; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		// Unit cells of the covered area per point
+		if (x.length == 0 || (maxX - minX + 1) * (maxY - minY + 1) <= GridIndex.DENSE_AREA * x.length) {
+			return new GridIndex(x, y);
+		}
+		return new KdTree(x, y);
+	}
+}